@@ -2,6 +2,8 @@ plugins {
     id("java")
     // Lombok
     id("io.freefair.lombok") version "8.10.2" // Plugin para integrar Lombok con Gradle
+    // Benchmarks con JMH en src/jmh
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "org.example"
@@ -27,6 +29,7 @@ dependencies {
     implementation("com.squareup.retrofit2:retrofit:2.12.0")
     implementation("com.squareup.retrofit2:converter-jackson:2.12.0") // Jackson con Retrofit
     implementation("com.squareup.retrofit2:adapter-rxjava3:2.12.0") // RxJava3 con Retrofit
+    implementation("com.squareup.okhttp3:okhttp:4.12.0") // Cliente HTTP configurable (Retrofit trae la 3.x)
 
     // Lombok en test
     testCompileOnly("org.projectlombok:lombok:1.18.32")
@@ -46,6 +49,7 @@ dependencies {
     // Para JSON usaremos Jackson
     implementation("com.fasterxml.jackson.core:jackson-databind:2.19.2")
     implementation("com.fasterxml.jackson.datatype:jackson-datatype-jsr310:2.19.2")
+    implementation("com.fasterxml.jackson.module:jackson-module-blackbird:2.19.2") // (De)serializadores generados
 
     // JDBI para la base de datos
     implementation("org.jdbi:jdbi3-core:3.49.5") // Core
@@ -54,11 +58,37 @@ dependencies {
     // H2 Database
     implementation("com.h2database:h2:2.3.232")
 
+    // Pool de conexiones para la base de datos
+    implementation("com.zaxxer:HikariCP:5.1.0")
+
     // Cache caffeine
     implementation("com.github.ben-manes.caffeine:caffeine:3.2.2")
 
 }
 
+jmh {
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+}
+
 tasks.test {
-    useJUnitPlatform()
+    useJUnitPlatform {
+        // Las pruebas de carga son lentas y se lanzan aparte con loadTest
+        excludeTags("load")
+    }
+}
+
+tasks.register<Test>("loadTest") {
+    description = "Pruebas de carga del camino HTTP contra el servidor local de la API"
+    group = "verification"
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    useJUnitPlatform {
+        includeTags("load")
+    }
+    // Se pasan los -Dload.* de la linea de comandos a las pruebas
+    systemProperties(System.getProperties().filterKeys { it.toString().startsWith("load.") }.mapKeys { it.key.toString() })
+    testLogging.showStandardStreams = true
+    outputs.upToDateWhen { false }
 }
\ No newline at end of file
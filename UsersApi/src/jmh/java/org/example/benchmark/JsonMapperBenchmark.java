@@ -0,0 +1,93 @@
+package org.example.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.example.config.AppObjectMapper;
+import org.example.mapper.UserMapper;
+import org.example.models.User;
+import org.example.rest.UserApiEntity;
+import org.example.rest.UserJsonStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara la (de)serialización de una lista de usuarios con el ObjectMapper compartido, con y sin Blackbird,
+ * frente a crear un ObjectMapper nuevo en cada llamada como se hacía antes al exportar a fichero.
+ * Se lanza con "gradlew jmh".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JsonMapperBenchmark {
+    @Param({"true", "false"})
+    private boolean blackbird;
+
+    @Param({"1000"})
+    private int users;
+
+    private List<UserApiEntity> entities;
+    private List<User> models;
+    private byte[] json;
+    private ObjectReader listReader;
+    private ObjectWriter writer;
+    private ObjectMapper mapper;
+
+    @Setup
+    public void setUp() throws Exception {
+        mapper = AppObjectMapper.create(blackbird);
+        entities = new ArrayList<>();
+        for (long id = 1; id <= users; id++) {
+            entities.add(new UserApiEntity(id, "Usuario " + id, "usuario" + id, "usuario" + id + "@example.com"));
+        }
+        models = entities.stream().map(UserMapper::toUser).toList();
+        json = mapper.writeValueAsBytes(entities);
+        listReader = mapper.readerFor(new TypeReference<List<UserApiEntity>>() {});
+        writer = mapper.writerWithDefaultPrettyPrinter();
+    }
+
+    @Benchmark
+    public List<UserApiEntity> deserializeList() throws Exception {
+        return listReader.readValue(json);
+    }
+
+    @Benchmark
+    public byte[] serializeList() throws Exception {
+        return mapper.writeValueAsBytes(entities);
+    }
+
+    @Benchmark
+    public long deserializeStreaming() {
+        // UserJsonStream usa el ObjectMapper de la aplicacion, su variante la decide json.blackbird.enabled
+        return UserJsonStream.parse(ResponseBody.create(MediaType.parse("application/json"), json)).count().blockingGet();
+    }
+
+    @Benchmark
+    public byte[] exportSharedWriter() throws Exception {
+        return writer.writeValueAsBytes(models);
+    }
+
+    @Benchmark
+    public byte[] exportNewMapperPerCall() throws Exception {
+        // Lo que hacia UserStorageImpl.fileWrite en cada llamada
+        ObjectMapper perCall = new ObjectMapper();
+        perCall.enable(SerializationFeature.INDENT_OUTPUT);
+        perCall.registerModule(new JavaTimeModule());
+        return perCall.writeValueAsBytes(models);
+    }
+}
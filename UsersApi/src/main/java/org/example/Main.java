@@ -1,14 +1,13 @@
 package org.example;
 
-import com.github.benmanes.caffeine.cache.Cache;
 import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Observable;
-import org.example.cache.UserCache;
 import org.example.dao.UserDao;
 import org.example.database.JdbiManager;
 import org.example.models.User;
 import org.example.repository.UserRemoteRepositoryImpl;
 import org.example.repository.UserRepositoryImpl;
+import org.example.repository.UserWriteBehindQueue;
 import org.example.rest.RetrofitClient;
 import org.example.rest.UsersApiDao;
 import org.example.service.UserServiceImpl;
@@ -25,10 +24,15 @@ public class Main {
         UserRepositoryImpl localRepository = new UserRepositoryImpl(dao);
         UserRemoteRepositoryImpl remoteRepository = new UserRemoteRepositoryImpl(rest);
         UserStorageImpl storage = new UserStorageImpl();
-        Cache<Long, User> cache = UserCache.provideCache();
 
         // Servicio
-        UserServiceImpl service = new UserServiceImpl(localRepository, remoteRepository, storage, cache);
+        UserServiceImpl service = new UserServiceImpl(localRepository, remoteRepository, storage);
+        // Al salir se vacia la escritura diferida pendiente (si esta activada) y despues se cierra el pool de conexiones,
+        // para que la BD persistente quede cerrada limpiamente
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            service.getWriteBehindQueue().ifPresent(UserWriteBehindQueue::close);
+            JdbiManager.getInstance().close();
+        }));
 
         User prueba = new User(1L, "Pepe", "pepelocatis", "pepelocatis@gmail.com");
 
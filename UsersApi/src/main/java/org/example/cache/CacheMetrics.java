@@ -0,0 +1,26 @@
+package org.example.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Instantánea de las métricas de una caché de usuarios.
+ * Campos: peticiones, aciertos y fallos con sus tasas, cargas correctas y fallidas con su tiempo medio,
+ * entradas expulsadas (por tamaño o caducidad) con su peso, y número y peso aproximados de las entradas actuales.
+ */
+@Data
+@AllArgsConstructor
+public final class CacheMetrics {
+    private final long requests;
+    private final long hits;
+    private final long misses;
+    private final double hitRate;
+    private final double missRate;
+    private final long loads;
+    private final long loadFailures;
+    private final double averageLoadMillis;
+    private final long evictions;
+    private final long evictionWeight;
+    private final long estimatedSize;
+    private final long weightedSize;
+}
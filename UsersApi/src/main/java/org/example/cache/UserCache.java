@@ -1,17 +1,141 @@
 package org.example.cache;
 
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.example.config.Config;
 import org.example.models.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Cachés de usuarios de la aplicación. La caducidad (desde la carga o desde el último acceso), el límite por número
+ * de usuarios o por peso aproximado y el registro de estadísticas se toman de la configuración.
+ */
 public class UserCache {
-    public static synchronized Cache<Long, User> provideCache() {
-        return Caffeine.newBuilder()
-                .expireAfterWrite(5, TimeUnit.MINUTES)
-                .maximumSize(Config.getInstance().getCacheSize())
-                .build();
+    private static final Logger logger = LoggerFactory.getLogger(UserCache.class);
+
+    /**
+     * Caché de usuarios por id que carga sola los que faltan con el cargador indicado. Las cargas simultáneas del
+     * mismo id comparten una sola búsqueda, y una entrada a la que se accede pasado el tiempo de refresco se recarga
+     * en segundo plano mientras se sigue sirviendo el valor anterior, de modo que los usuarios más usados no caducan.
+     * @param loader Búsqueda del usuario cuando no está en la caché; un resultado null indica que no existe y no se guarda
+     * @return Caché de usuarios por id
+     */
+    public static AsyncLoadingCache<Long, User> provideLoadingCache(AsyncCacheLoader<Long, User> loader) {
+        return provideLoadingCache(loader, Ticker.systemTicker());
+    }
+
+    /**
+     * Igual que {@link #provideLoadingCache(AsyncCacheLoader)} pero midiendo el tiempo con el reloj indicado,
+     * por ejemplo uno que las pruebas adelantan a mano para comprobar la caducidad y el refresco.
+     * @param loader Búsqueda del usuario cuando no está en la caché; un resultado null indica que no existe y no se guarda
+     * @param ticker Reloj de la caché
+     * @return Caché de usuarios por id
+     */
+    public static synchronized AsyncLoadingCache<Long, User> provideLoadingCache(AsyncCacheLoader<Long, User> loader, Ticker ticker) {
+        Config config = Config.getInstance();
+        Caffeine<Long, User> builder = UserCache.<Long>builder("users", 1).ticker(ticker);
+        long refreshMs = config.getCacheRefreshAfterWriteMs();
+        long expiryMs = config.getCacheExpireAfterWriteMs();
+        boolean expiresAfterWrite = !"access".equalsIgnoreCase(config.getCacheExpiryMode());
+        if (refreshMs > 0 && expiresAfterWrite && refreshMs >= expiryMs) {
+            // La entrada caduca desde la carga antes de poder recargarse, el refresco nunca ocurriria
+            logger.warn("cache.refresh-after-write-ms (" + refreshMs + ") no es menor que cache.expire-after-write-ms ("
+                    + expiryMs + "), no se recargan los usuarios en segundo plano");
+        }
+        else if (refreshMs > 0) {
+            builder.refreshAfterWrite(refreshMs, TimeUnit.MILLISECONDS);
+        }
+        return builder.buildAsync(loader);
+    }
+
+    /**
+     * Caché de usuarios indexada por atributos secundarios (username y email), junto a la caché por id.
+     * Las claves llevan el nombre del atributo como prefijo, por ejemplo "username:pepe".
+     * @return Caché de búsquedas por atributo
+     */
+    public static synchronized Cache<String, User> provideLookupCache() {
+        // Cada usuario aparece dos veces, una por username y otra por email
+        return UserCache.<String>builder("lookups", 2).build();
+    }
+
+    /**
+     * Devuelve las estadísticas acumuladas de una caché. Si no registra estadísticas todos los contadores son 0.
+     * @param cache La caché
+     * @return Métricas de la caché
+     */
+    public static CacheMetrics metrics(Cache<?, User> cache) {
+        CacheStats stats = cache.stats();
+        long weightedSize = cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(cache.estimatedSize()))
+                .orElse(cache.estimatedSize());
+        return new CacheMetrics(
+                stats.requestCount(),
+                stats.hitCount(),
+                stats.missCount(),
+                stats.hitRate(),
+                stats.missRate(),
+                stats.loadCount(),
+                stats.loadFailureCount(),
+                stats.averageLoadPenalty() / TimeUnit.MILLISECONDS.toNanos(1),
+                stats.evictionCount(),
+                stats.evictionWeight(),
+                cache.estimatedSize(),
+                weightedSize
+        );
+    }
+
+    /**
+     * Configuración común de las cachés de usuarios.
+     * @param name Nombre de la caché en los logs
+     * @param entriesPerUser Cuántas entradas ocupa cada usuario, multiplica el límite de tamaño o de peso
+     */
+    private static <K> Caffeine<K, User> builder(String name, int entriesPerUser) {
+        Config config = Config.getInstance();
+        Caffeine<K, User> builder = Caffeine.newBuilder()
+                .removalListener((K key, User user, RemovalCause cause) -> {
+                    // Solo interesan las salidas que decide la cache, no los borrados o reemplazos de la aplicacion
+                    if (cause.wasEvicted() && logger.isDebugEnabled()) {
+                        logger.debug("Cache " + name + ": sale " + key + " (" + cause + ")");
+                    }
+                });
+
+        long expiryMs = config.getCacheExpireAfterWriteMs();
+        if ("access".equalsIgnoreCase(config.getCacheExpiryMode())) {
+            builder.expireAfterAccess(expiryMs, TimeUnit.MILLISECONDS);
+        }
+        else {
+            builder.expireAfterWrite(expiryMs, TimeUnit.MILLISECONDS);
+        }
+
+        if (config.getCacheMaxWeight() > 0) {
+            builder.maximumWeight(config.getCacheMaxWeight() * entriesPerUser).weigher((K key, User user) -> weigh(user));
+        }
+        else {
+            builder.maximumSize((long) config.getCacheSize() * entriesPerUser);
+        }
+
+        if (config.isCacheRecordStats()) {
+            builder.recordStats();
+        }
+        return builder;
+    }
+
+    /**
+     * Tamaño aproximado en bytes de un usuario: cabecera del objeto y del id y dos bytes por carácter de sus textos.
+     */
+    private static int weigh(User user) {
+        return 48 + 2 * (length(user.getName()) + length(user.getUsername()) + length(user.getEmail()));
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
     }
 }
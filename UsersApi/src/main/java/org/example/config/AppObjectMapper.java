@@ -0,0 +1,57 @@
+package org.example.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+/**
+ * ObjectMapper compartido por el cliente REST, la lectura en streaming y el almacenamiento en fichero.
+ * Un ObjectMapper es seguro entre hilos y guarda en caché los (de)serializadores de cada clase, por lo que crear
+ * uno nuevo en cada llamada obliga a volver a construirlos. Con Blackbird activado los campos se leen y escriben
+ * con accesos generados en tiempo de ejecución en lugar de por reflexión.
+ */
+public class AppObjectMapper {
+    private static ObjectMapper mapper;
+    private static ObjectWriter prettyWriter;
+
+    private AppObjectMapper() {}
+
+    /**
+     * ObjectMapper de la aplicación, con Blackbird según la configuración.
+     * @return Singleton del ObjectMapper
+     */
+    public static synchronized ObjectMapper get() {
+        if (mapper == null) {
+            mapper = create(Config.getInstance().isJsonBlackbirdEnabled());
+        }
+        return mapper;
+    }
+
+    /**
+     * Writer con sangrado del ObjectMapper compartido, para los ficheros que se exportan.
+     * @return Singleton del writer
+     */
+    public static synchronized ObjectWriter prettyWriter() {
+        if (prettyWriter == null) {
+            prettyWriter = get().writerWithDefaultPrettyPrinter();
+        }
+        return prettyWriter;
+    }
+
+    /**
+     * Crea un ObjectMapper con la configuración de la aplicación. Solo se usa directamente para comparar
+     * las dos variantes en los benchmarks; el resto de la aplicación usa {@link #get()}.
+     * @param blackbird true para registrar el módulo Blackbird
+     * @return ObjectMapper nuevo
+     */
+    public static ObjectMapper create(boolean blackbird) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        // Modulo para poder serializar y deserializar fechas
+        objectMapper.registerModule(new JavaTimeModule());
+        if (blackbird) {
+            objectMapper.registerModule(new BlackbirdModule());
+        }
+        return objectMapper;
+    }
+}
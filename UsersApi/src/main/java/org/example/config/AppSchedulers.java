@@ -0,0 +1,53 @@
+package org.example.config;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Schedulers acotados donde se ejecuta el trabajo bloqueante de la aplicación:
+ * uno para las consultas JDBC, con el número de hilos de la configuración, y otro para la escritura diferida.
+ * Las llamadas HTTP no necesitan scheduler propio porque son asincronas.
+ */
+public class AppSchedulers {
+    private static Scheduler jdbc;
+    private static Scheduler writeBehind;
+
+    private AppSchedulers() {}
+
+    /**
+     * Scheduler para el acceso a la base de datos embebida.
+     * @return Singleton del scheduler de JDBC
+     */
+    public static synchronized Scheduler jdbc() {
+        if (jdbc == null) {
+            jdbc = create("jdbc", Config.getInstance().getJdbcSchedulerThreads());
+        }
+        return jdbc;
+    }
+
+    /**
+     * Scheduler de un solo hilo para vaciar la cola de escritura diferida.
+     * @return Singleton del scheduler de escritura diferida
+     */
+    public static synchronized Scheduler writeBehind() {
+        if (writeBehind == null) {
+            writeBehind = create("write-behind", 1);
+        }
+        return writeBehind;
+    }
+
+    private static Scheduler create(String name, int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        // Hilos daemon para que no impidan que la aplicacion termine
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return Schedulers.from(executor);
+    }
+}
@@ -5,7 +5,10 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 public class Config {
     private static Config instance;
@@ -56,16 +59,222 @@ public class Config {
      */
     private void setDefaults() {
         properties.setProperty("database.url", "jdbc:h2:mem:users;DB_CLOSE_DELAY=-1");
+        properties.setProperty("database.mode", "memory");
+        properties.setProperty("database.file.path", "./data/users");
+        properties.setProperty("database.cache.size-kb", "16384");
+        properties.setProperty("database.compress", "false");
         properties.setProperty("api.url", "https://jsonplaceholder.typicode.com/");
+        properties.setProperty("http.pool.max-idle", "32");
+        properties.setProperty("http.pool.keep-alive-ms", "300000");
+        properties.setProperty("http.dispatcher.max-requests", "256");
+        properties.setProperty("http.dispatcher.max-requests-per-host", "64");
+        properties.setProperty("http.timeout.connect-ms", "5000");
+        properties.setProperty("http.timeout.read-ms", "10000");
+        properties.setProperty("http.timeout.write-ms", "10000");
+        properties.setProperty("http.timeout.call-ms", "30000");
+        properties.setProperty("http.http2.enabled", "true");
+        properties.setProperty("http.cache.enabled", "true");
+        properties.setProperty("http.cache.dir", "./data/http-cache");
+        properties.setProperty("http.cache.max-size-bytes", "52428800");
+        properties.setProperty("http.cache.offline-fallback", "true");
+        properties.setProperty("json.blackbird.enabled", "true");
+        properties.setProperty("remote.bulk.parallelism", "16");
+        properties.setProperty("resilience.circuit.window-size", "20");
+        properties.setProperty("resilience.circuit.minimum-calls", "10");
+        properties.setProperty("resilience.circuit.failure-rate-threshold", "0.5");
+        properties.setProperty("resilience.circuit.open-duration-ms", "10000");
+        properties.setProperty("resilience.hedge.enabled", "true");
+        properties.setProperty("resilience.hedge.percentile", "0.95");
+        properties.setProperty("resilience.hedge.min-delay-ms", "20");
+        properties.setProperty("resilience.hedge.max-delay-ms", "1000");
+        properties.setProperty("resilience.hedge.window-size", "200");
+        properties.setProperty("resilience.hedge.max-ratio", "0.1");
+        properties.setProperty("resilience.limiter.initial-limit", "20");
+        properties.setProperty("resilience.limiter.min-limit", "4");
+        properties.setProperty("resilience.limiter.max-limit", "256");
+        properties.setProperty("resilience.limiter.backoff-ratio", "0.9");
+        properties.setProperty("resilience.limiter.latency-tolerance", "2.0");
+        properties.setProperty("resilience.limiter.queue-size", "1000");
+        properties.setProperty("resilience.bulkhead.read.max-concurrent", "500");
+        properties.setProperty("resilience.bulkhead.write.max-concurrent", "100");
+        properties.setProperty("resilience.retry.max-attempts", "3");
+        properties.setProperty("resilience.retry.base-delay-ms", "100");
+        properties.setProperty("resilience.retry.max-delay-ms", "2000");
+        properties.setProperty("resilience.retry.idempotent-methods", "GET,PUT,DELETE");
+        properties.setProperty("resilience.retry.budget.max-tokens", "20");
+        properties.setProperty("resilience.retry.budget.token-ratio", "0.1");
         properties.setProperty("cache.size", "5");
+        properties.setProperty("cache.expire-after-write-ms", "300000");
+        properties.setProperty("cache.refresh-after-write-ms", "60000");
+        properties.setProperty("cache.expiry-mode", "write");
+        properties.setProperty("cache.max-weight", "0");
+        properties.setProperty("cache.record-stats", "true");
+        properties.setProperty("sync.full-refresh.threshold", "0.5");
+        properties.setProperty("sync.max-delete-ratio", "0.5");
+        properties.setProperty("writebehind.enabled", "false");
+        properties.setProperty("writebehind.capacity", "10000");
+        properties.setProperty("writebehind.batch.size", "500");
+        properties.setProperty("writebehind.flush.interval-ms", "1000");
+        properties.setProperty("writebehind.max-attempts", "3");
+        properties.setProperty("database.batch.size", "500");
+        properties.setProperty("database.fetch.size", "1000");
+        properties.setProperty("database.pool.min-idle", "2");
+        properties.setProperty("database.pool.max-size", "10");
+        properties.setProperty("database.pool.connection-timeout-ms", "30000");
+        properties.setProperty("database.pool.idle-timeout-ms", "600000");
     }
 
     /**
-     * Obtiene la URL de la base de datos.
+     * Obtiene la URL de la base de datos. En modo "file" se construye a partir de la ruta del fichero
+     * y de las opciones del MVStore; en cualquier otro caso se usa "database.url" tal cual.
      * @return Cadena con la URL
      */
     public String getDatabaseUrl() {
-        return properties.getProperty("database.url");
+        if (!isDatabasePersistent()) {
+            return properties.getProperty("database.url");
+        }
+        return "jdbc:h2:file:" + properties.getProperty("database.file.path", "./data/users")
+                + ";CACHE_SIZE=" + getDatabaseCacheSizeKb()
+                + ";COMPRESS=" + String.valueOf(isDatabaseCompressed()).toUpperCase();
+    }
+
+    /**
+     * Indica si la base de datos se guarda en un fichero y sobrevive a los reinicios.
+     * @return true si "database.mode" es "file"
+     */
+    public boolean isDatabasePersistent() {
+        return "file".equalsIgnoreCase(properties.getProperty("database.mode", "memory"));
+    }
+
+    /**
+     * Obtiene el tamaño de la caché de páginas del MVStore en KB.
+     * @return Tamaño de caché en KB
+     */
+    public int getDatabaseCacheSizeKb() {
+        return Integer.parseInt(properties.getProperty("database.cache.size-kb", "16384"));
+    }
+
+    /**
+     * Indica si el MVStore comprime los datos al escribirlos en disco (solo se aplica al crear el fichero).
+     * @return true si se comprimen los datos
+     */
+    public boolean isDatabaseCompressed() {
+        return Boolean.parseBoolean(properties.getProperty("database.compress", "false"));
+    }
+
+    /**
+     * Obtiene el número de filas que se envían en cada lote de las inserciones masivas.
+     * @return Tamaño del lote
+     */
+    public int getDatabaseBatchSize() {
+        return Integer.parseInt(properties.getProperty("database.batch.size", "500"));
+    }
+
+    /**
+     * Obtiene el número de filas que se leen en cada viaje a la BD al recorrer consultas en streaming.
+     * @return Tamaño de fetch
+     */
+    public int getDatabaseFetchSize() {
+        return Integer.parseInt(properties.getProperty("database.fetch.size", "1000"));
+    }
+
+    /**
+     * Obtiene el número mínimo de conexiones ociosas que mantiene el pool.
+     * @return Mínimo de conexiones ociosas
+     */
+    public int getDatabasePoolMinIdle() {
+        return Integer.parseInt(properties.getProperty("database.pool.min-idle", "2"));
+    }
+
+    /**
+     * Obtiene el número máximo de conexiones del pool.
+     * @return Tamaño máximo del pool
+     */
+    public int getDatabasePoolMaxSize() {
+        return Integer.parseInt(properties.getProperty("database.pool.max-size", "10"));
+    }
+
+    /**
+     * Obtiene el tiempo máximo que se espera para obtener una conexión del pool.
+     * @return Milisegundos de espera
+     */
+    public long getDatabasePoolConnectionTimeoutMs() {
+        return Long.parseLong(properties.getProperty("database.pool.connection-timeout-ms", "30000"));
+    }
+
+    /**
+     * Obtiene el tiempo que una conexión puede estar ociosa antes de ser cerrada por el pool.
+     * @return Milisegundos de inactividad
+     */
+    public long getDatabasePoolIdleTimeoutMs() {
+        return Long.parseLong(properties.getProperty("database.pool.idle-timeout-ms", "600000"));
+    }
+
+    /**
+     * Obtiene la proporción de cambios a partir de la cual una sincronización se hace como recarga completa
+     * a través de la tabla de carga en lugar de aplicar las diferencias fila a fila.
+     * @return Proporción entre 0 y 1
+     */
+    public double getSyncFullRefreshThreshold() {
+        return Double.parseDouble(properties.getProperty("sync.full-refresh.threshold", "0.5"));
+    }
+
+    /**
+     * Obtiene la proporción máxima de usuarios locales que puede borrar una sola sincronización. Si la lista de la API
+     * obliga a borrar más, se considera una respuesta incompleta y no se aplica.
+     * @return Proporción entre 0 y 1
+     */
+    public double getSyncMaxDeleteRatio() {
+        return Double.parseDouble(properties.getProperty("sync.max-delete-ratio", "0.5"));
+    }
+
+    /**
+     * Obtiene el número de hilos del scheduler donde se ejecutan las consultas a la base de datos.
+     * Por defecto coincide con el tamaño máximo del pool de conexiones.
+     * @return Número de hilos
+     */
+    public int getJdbcSchedulerThreads() {
+        return Integer.parseInt(properties.getProperty("scheduler.jdbc.threads", String.valueOf(getDatabasePoolMaxSize())));
+    }
+
+    /**
+     * Indica si las escrituras en la base de datos local se hacen de forma diferida a través de una cola.
+     * @return true si la escritura diferida está activada
+     */
+    public boolean isWriteBehindEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("writebehind.enabled", "false"));
+    }
+
+    /**
+     * Obtiene el número máximo de escrituras pendientes en la cola de escritura diferida.
+     * @return Capacidad de la cola
+     */
+    public int getWriteBehindCapacity() {
+        return Integer.parseInt(properties.getProperty("writebehind.capacity", "10000"));
+    }
+
+    /**
+     * Obtiene el número de escrituras pendientes a partir del cual se vacía la cola sin esperar al intervalo.
+     * @return Tamaño de lote
+     */
+    public int getWriteBehindBatchSize() {
+        return Integer.parseInt(properties.getProperty("writebehind.batch.size", "500"));
+    }
+
+    /**
+     * Obtiene cada cuánto tiempo se vacía la cola de escritura diferida.
+     * @return Milisegundos entre vaciados
+     */
+    public long getWriteBehindFlushIntervalMs() {
+        return Long.parseLong(properties.getProperty("writebehind.flush.interval-ms", "1000"));
+    }
+
+    /**
+     * Obtiene cuántas veces se intenta aplicar una escritura diferida antes de descartarla.
+     * @return Número máximo de intentos por escritura
+     */
+    public int getWriteBehindMaxAttempts() {
+        return Integer.parseInt(properties.getProperty("writebehind.max-attempts", "3"));
     }
 
     /**
@@ -78,6 +287,50 @@ public class Config {
         return Integer.parseInt(properties.getProperty("cache.size")); // Valor por defecto
     }
 
+    /**
+     * Obtiene el tiempo que un usuario puede estar en la caché desde que se cargó antes de caducar.
+     * @return Milisegundos hasta que caduca una entrada
+     */
+    public long getCacheExpireAfterWriteMs() {
+        return Long.parseLong(properties.getProperty("cache.expire-after-write-ms", "300000"));
+    }
+
+    /**
+     * Obtiene el tiempo desde la carga a partir del cual un acceso a un usuario de la caché lo recarga en segundo plano.
+     * Debe ser menor que la caducidad para que los usuarios más usados se recarguen antes de caducar.
+     * Con 0 o un valor negativo no se recarga en segundo plano.
+     * @return Milisegundos hasta que una entrada se puede recargar
+     */
+    public long getCacheRefreshAfterWriteMs() {
+        return Long.parseLong(properties.getProperty("cache.refresh-after-write-ms", "60000"));
+    }
+
+    /**
+     * Obtiene desde cuándo se cuenta la caducidad de las entradas de la caché: "write" desde que se cargan
+     * o "access" desde el último acceso.
+     * @return Modo de caducidad
+     */
+    public String getCacheExpiryMode() {
+        return properties.getProperty("cache.expiry-mode", "write");
+    }
+
+    /**
+     * Obtiene el peso máximo de la caché, en bytes aproximados de los usuarios guardados.
+     * Con 0 el límite es el número de usuarios de cache.size.
+     * @return Peso máximo, 0 para limitar por número de entradas
+     */
+    public long getCacheMaxWeight() {
+        return Long.parseLong(properties.getProperty("cache.max-weight", "0"));
+    }
+
+    /**
+     * Indica si las cachés registran estadísticas de aciertos, fallos, cargas y expulsiones.
+     * @return true si se registran estadísticas
+     */
+    public boolean isCacheRecordStats() {
+        return Boolean.parseBoolean(properties.getProperty("cache.record-stats", "true"));
+    }
+
     /**
      * Método para obtener la URL de la API
      * @return CAdena con la URL
@@ -85,4 +338,322 @@ public class Config {
     public String getApiUrl(){
         return properties.getProperty("api.url");
     }
+
+    /**
+     * Obtiene el número máximo de conexiones HTTP ociosas que se mantienen abiertas para reutilizarlas.
+     * @return Máximo de conexiones ociosas
+     */
+    public int getHttpPoolMaxIdle() {
+        return Integer.parseInt(properties.getProperty("http.pool.max-idle", "32"));
+    }
+
+    /**
+     * Obtiene el tiempo que una conexión HTTP ociosa se mantiene abierta antes de cerrarla.
+     * @return Milisegundos de keep-alive
+     */
+    public long getHttpPoolKeepAliveMs() {
+        return Long.parseLong(properties.getProperty("http.pool.keep-alive-ms", "300000"));
+    }
+
+    /**
+     * Obtiene el número máximo de peticiones HTTP en vuelo a la vez.
+     * @return Máximo de peticiones simultáneas
+     */
+    public int getHttpMaxRequests() {
+        return Integer.parseInt(properties.getProperty("http.dispatcher.max-requests", "256"));
+    }
+
+    /**
+     * Obtiene el número máximo de peticiones HTTP en vuelo a la vez contra un mismo host.
+     * @return Máximo de peticiones simultáneas por host
+     */
+    public int getHttpMaxRequestsPerHost() {
+        return Integer.parseInt(properties.getProperty("http.dispatcher.max-requests-per-host", "64"));
+    }
+
+    /**
+     * Obtiene el tiempo máximo para establecer una conexión HTTP.
+     * @return Milisegundos de espera
+     */
+    public long getHttpConnectTimeoutMs() {
+        return Long.parseLong(properties.getProperty("http.timeout.connect-ms", "5000"));
+    }
+
+    /**
+     * Obtiene el tiempo máximo de espera entre dos lecturas de la respuesta.
+     * @return Milisegundos de espera
+     */
+    public long getHttpReadTimeoutMs() {
+        return Long.parseLong(properties.getProperty("http.timeout.read-ms", "10000"));
+    }
+
+    /**
+     * Obtiene el tiempo máximo de espera entre dos escrituras de la petición.
+     * @return Milisegundos de espera
+     */
+    public long getHttpWriteTimeoutMs() {
+        return Long.parseLong(properties.getProperty("http.timeout.write-ms", "10000"));
+    }
+
+    /**
+     * Obtiene el tiempo máximo de una llamada completa, desde la resolución DNS hasta leer la respuesta (0 sin límite).
+     * @return Milisegundos de espera
+     */
+    public long getHttpCallTimeoutMs() {
+        return Long.parseLong(properties.getProperty("http.timeout.call-ms", "30000"));
+    }
+
+    /**
+     * Indica si se negocia HTTP/2 con la API cuando el servidor lo admite.
+     * @return true si HTTP/2 está activado
+     */
+    public boolean isHttp2Enabled() {
+        return Boolean.parseBoolean(properties.getProperty("http.http2.enabled", "true"));
+    }
+
+    /**
+     * Indica si las respuestas de la API se guardan en la caché HTTP en disco.
+     * @return true si la caché HTTP está activada
+     */
+    public boolean isHttpCacheEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("http.cache.enabled", "true"));
+    }
+
+    /**
+     * Obtiene el directorio de la caché HTTP en disco.
+     * @return Ruta del directorio
+     */
+    public String getHttpCacheDir() {
+        return properties.getProperty("http.cache.dir", "./data/http-cache");
+    }
+
+    /**
+     * Obtiene el tamaño máximo de la caché HTTP en disco. Al superarlo se borran las entradas menos usadas.
+     * @return Tamaño máximo en bytes
+     */
+    public long getHttpCacheMaxSizeBytes() {
+        return Long.parseLong(properties.getProperty("http.cache.max-size-bytes", "52428800"));
+    }
+
+    /**
+     * Indica si, cuando la API no responde, las lecturas se sirven desde la caché HTTP aunque estén caducadas.
+     * @return true si se usa la caché como respaldo sin conexión
+     */
+    public boolean isHttpCacheOfflineFallback() {
+        return Boolean.parseBoolean(properties.getProperty("http.cache.offline-fallback", "true"));
+    }
+
+    /**
+     * Indica si el ObjectMapper de la aplicación usa el módulo Blackbird (accesos generados en lugar de reflexión).
+     * @return true si Blackbird está activado
+     */
+    public boolean isJsonBlackbirdEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("json.blackbird.enabled", "true"));
+    }
+
+    /**
+     * Obtiene el número máximo de peticiones a la API en vuelo a la vez al buscar varios usuarios por id.
+     * @return Máximo de peticiones simultáneas
+     */
+    public int getRemoteBulkParallelism() {
+        return Integer.parseInt(properties.getProperty("remote.bulk.parallelism", "16"));
+    }
+
+    /**
+     * Obtiene el número de llamadas recientes a la API que tiene en cuenta el circuit breaker.
+     * @return Tamaño de la ventana de llamadas
+     */
+    public int getCircuitWindowSize() {
+        return Integer.parseInt(properties.getProperty("resilience.circuit.window-size", "20"));
+    }
+
+    /**
+     * Obtiene el número mínimo de llamadas en la ventana para que el circuit breaker pueda abrirse.
+     * @return Mínimo de llamadas
+     */
+    public int getCircuitMinimumCalls() {
+        return Integer.parseInt(properties.getProperty("resilience.circuit.minimum-calls", "10"));
+    }
+
+    /**
+     * Obtiene la proporción de llamadas fallidas en la ventana a partir de la cual se abre el circuito.
+     * @return Proporción entre 0 y 1
+     */
+    public double getCircuitFailureRateThreshold() {
+        return Double.parseDouble(properties.getProperty("resilience.circuit.failure-rate-threshold", "0.5"));
+    }
+
+    /**
+     * Obtiene el tiempo que el circuito permanece abierto antes de dejar pasar una llamada de prueba.
+     * @return Milisegundos abierto
+     */
+    public long getCircuitOpenDurationMs() {
+        return Long.parseLong(properties.getProperty("resilience.circuit.open-duration-ms", "10000"));
+    }
+
+    /**
+     * Indica si las búsquedas por id en la API lanzan una petición duplicada cuando la primera tarda demasiado.
+     * @return true si las peticiones duplicadas están activadas
+     */
+    public boolean isHedgeEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("resilience.hedge.enabled", "true"));
+    }
+
+    /**
+     * Obtiene el percentil de la latencia observada tras el que se lanza la petición duplicada.
+     * @return Percentil entre 0 y 1
+     */
+    public double getHedgePercentile() {
+        return Double.parseDouble(properties.getProperty("resilience.hedge.percentile", "0.95"));
+    }
+
+    /**
+     * Obtiene la espera mínima antes de lanzar la petición duplicada.
+     * @return Milisegundos de espera
+     */
+    public long getHedgeMinDelayMs() {
+        return Long.parseLong(properties.getProperty("resilience.hedge.min-delay-ms", "20"));
+    }
+
+    /**
+     * Obtiene la espera máxima antes de lanzar la petición duplicada, que también se usa mientras no hay
+     * suficientes latencias medidas.
+     * @return Milisegundos de espera
+     */
+    public long getHedgeMaxDelayMs() {
+        return Long.parseLong(properties.getProperty("resilience.hedge.max-delay-ms", "1000"));
+    }
+
+    /**
+     * Obtiene el número de latencias recientes con las que se calcula el percentil.
+     * @return Tamaño de la ventana de latencias
+     */
+    public int getHedgeWindowSize() {
+        return Integer.parseInt(properties.getProperty("resilience.hedge.window-size", "200"));
+    }
+
+    /**
+     * Obtiene la proporción máxima de llamadas que pueden lanzar una petición duplicada, para no duplicar
+     * la carga sobre una API que va lenta en general.
+     * @return Proporción entre 0 y 1
+     */
+    public double getHedgeMaxRatio() {
+        return Double.parseDouble(properties.getProperty("resilience.hedge.max-ratio", "0.1"));
+    }
+
+    /**
+     * Obtiene el límite inicial de llamadas a la API en vuelo, que después se ajusta solo según la respuesta de la API.
+     * @return Límite inicial de concurrencia
+     */
+    public int getLimiterInitialLimit() {
+        return Integer.parseInt(properties.getProperty("resilience.limiter.initial-limit", "20"));
+    }
+
+    /**
+     * Obtiene el valor mínimo al que puede bajar el límite de llamadas en vuelo.
+     * @return Límite mínimo de concurrencia
+     */
+    public int getLimiterMinLimit() {
+        return Integer.parseInt(properties.getProperty("resilience.limiter.min-limit", "4"));
+    }
+
+    /**
+     * Obtiene el valor máximo al que puede subir el límite de llamadas en vuelo.
+     * @return Límite máximo de concurrencia
+     */
+    public int getLimiterMaxLimit() {
+        return Integer.parseInt(properties.getProperty("resilience.limiter.max-limit", "256"));
+    }
+
+    /**
+     * Obtiene el factor por el que se multiplica el límite cuando la API da señales de sobrecarga.
+     * @return Factor entre 0 y 1
+     */
+    public double getLimiterBackoffRatio() {
+        return Double.parseDouble(properties.getProperty("resilience.limiter.backoff-ratio", "0.9"));
+    }
+
+    /**
+     * Obtiene cuántas veces la latencia mínima observada se tolera antes de considerar que la API está saturada.
+     * @return Multiplicador de la latencia mínima
+     */
+    public double getLimiterLatencyTolerance() {
+        return Double.parseDouble(properties.getProperty("resilience.limiter.latency-tolerance", "2.0"));
+    }
+
+    /**
+     * Obtiene el número máximo de llamadas que pueden esperar a que haya hueco en el límite de concurrencia.
+     * @return Tamaño de la cola de espera
+     */
+    public int getLimiterQueueSize() {
+        return Integer.parseInt(properties.getProperty("resilience.limiter.queue-size", "1000"));
+    }
+
+    /**
+     * Obtiene el número máximo de lecturas a la API en vuelo o esperando a la vez.
+     * @return Máximo de lecturas simultáneas
+     */
+    public int getBulkheadReadMaxConcurrent() {
+        return Integer.parseInt(properties.getProperty("resilience.bulkhead.read.max-concurrent", "500"));
+    }
+
+    /**
+     * Obtiene el número máximo de escrituras a la API en vuelo o esperando a la vez.
+     * @return Máximo de escrituras simultáneas
+     */
+    public int getBulkheadWriteMaxConcurrent() {
+        return Integer.parseInt(properties.getProperty("resilience.bulkhead.write.max-concurrent", "100"));
+    }
+
+    /**
+     * Obtiene el número máximo de intentos de una llamada a la API, contando el primero.
+     * @return Máximo de intentos
+     */
+    public int getRetryMaxAttempts() {
+        return Integer.parseInt(properties.getProperty("resilience.retry.max-attempts", "3"));
+    }
+
+    /**
+     * Obtiene la espera base entre reintentos, que se duplica en cada intento.
+     * @return Milisegundos de espera
+     */
+    public long getRetryBaseDelayMs() {
+        return Long.parseLong(properties.getProperty("resilience.retry.base-delay-ms", "100"));
+    }
+
+    /**
+     * Obtiene la espera máxima entre reintentos.
+     * @return Milisegundos de espera
+     */
+    public long getRetryMaxDelayMs() {
+        return Long.parseLong(properties.getProperty("resilience.retry.max-delay-ms", "2000"));
+    }
+
+    /**
+     * Obtiene los métodos HTTP que se pueden reintentar sin riesgo de repetir sus efectos.
+     * @return Métodos HTTP en mayúsculas
+     */
+    public Set<String> getRetryIdempotentMethods() {
+        return Arrays.stream(properties.getProperty("resilience.retry.idempotent-methods", "GET,PUT,DELETE").split(","))
+                .map(method -> method.trim().toUpperCase())
+                .filter(method -> !method.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Obtiene el número máximo de reintentos acumulados que permite el presupuesto de reintentos.
+     * @return Máximo de reintentos acumulados
+     */
+    public int getRetryBudgetMaxTokens() {
+        return Integer.parseInt(properties.getProperty("resilience.retry.budget.max-tokens", "20"));
+    }
+
+    /**
+     * Obtiene la parte de un reintento que se recupera con cada llamada correcta. Con 0.1 se permite como mucho
+     * un reintento por cada diez llamadas correctas una vez agotado el máximo acumulado.
+     * @return Proporción entre 0 y 1
+     */
+    public double getRetryBudgetTokenRatio() {
+        return Double.parseDouble(properties.getProperty("resilience.retry.budget.token-ratio", "0.1"));
+    }
 }
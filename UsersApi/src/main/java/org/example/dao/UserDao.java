@@ -1,13 +1,23 @@
 package org.example.dao;
 
 
+import org.jdbi.v3.core.result.ResultIterable;
+import org.jdbi.v3.sqlobject.config.KeyColumn;
 import org.jdbi.v3.sqlobject.config.RegisterConstructorMapper;
+import org.jdbi.v3.sqlobject.config.ValueColumn;
 import org.jdbi.v3.sqlobject.customizer.Bind;
 import org.jdbi.v3.sqlobject.customizer.BindBean;
+import org.jdbi.v3.sqlobject.customizer.BindList;
+import org.jdbi.v3.sqlobject.customizer.FetchSize;
+import org.jdbi.v3.sqlobject.statement.BatchChunkSize;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
 import org.jdbi.v3.sqlobject.statement.SqlQuery;
 import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+import org.jdbi.v3.sqlobject.transaction.Transaction;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -22,6 +32,24 @@ public interface UserDao {
     @SqlQuery("SELECT * FROM users")
     List<UserEntity> findAll();
 
+    /**
+     * Recorre los usuarios de la BD con un cursor sin cargarlos todos en memoria.
+     * El handle queda abierto hasta que se cierra el iterador devuelto.
+     * @param fetchSize Número de filas que se leen en cada viaje a la BD
+     * @return Iterable perezoso de usuarios ordenados por id
+     */
+    @SqlQuery("SELECT * FROM users ORDER BY id")
+    ResultIterable<UserEntity> streamAll(@FetchSize int fetchSize);
+
+    /**
+     * Obtiene una página de usuarios por keyset: los siguientes al último id leído, sin OFFSET.
+     * @param afterId El id del último usuario de la página anterior (0 para la primera)
+     * @param limit Número máximo de usuarios de la página
+     * @return Lista de usuarios ordenados por id
+     */
+    @SqlQuery("SELECT * FROM users WHERE id > :afterId ORDER BY id LIMIT :limit")
+    List<UserEntity> findPage(@Bind("afterId") long afterId, @Bind("limit") int limit);
+
     /**
      * Busca un usuario en base a un ID
      * @param id El id del usuario a buscar
@@ -30,35 +58,177 @@ public interface UserDao {
     @SqlQuery("SELECT * FROM users WHERE id = :id")
     Optional<UserEntity> findById(@Bind("id") long id); // Optinal porque puede dar null
 
+    /**
+     * Busca varios usuarios por id en una sola consulta usando la clave primaria
+     * @param ids Los ids a buscar, no puede estar vacía
+     * @return Los usuarios encontrados, los ids que no existen no aparecen
+     */
+    @SqlQuery("SELECT * FROM users WHERE id IN (<ids>)")
+    List<UserEntity> findByIds(@BindList("ids") Collection<Long> ids);
+
+    /**
+     * Busca un usuario por su username usando el índice idx_users_username
+     * @param username El username del usuario a buscar
+     * @return El usuario en caso correcto, vacío en caso de que no lo encuentre
+     */
+    @SqlQuery("SELECT * FROM users WHERE username = :username LIMIT 1")
+    Optional<UserEntity> findByUsername(@Bind("username") String username);
+
+    /**
+     * Busca un usuario por su email usando el índice idx_users_email
+     * @param email El email del usuario a buscar
+     * @return El usuario en caso correcto, vacío en caso de que no lo encuentre
+     */
+    @SqlQuery("SELECT * FROM users WHERE email = :email LIMIT 1")
+    Optional<UserEntity> findByEmail(@Bind("email") String email);
+
     /**
      * Guarda un usuario en la BD
      * @param userEntity
      * @return 0 en caso incorrecto, 1 en caso correcto
      */
-    @SqlUpdate("INSERT INTO users (id, name, username, email, created_at, updated_at) VALUES(:id, :name, :username, :email, :createdAt, :updatedAt)")
+    @SqlUpdate("INSERT INTO users (id, name, username, email, content_hash, created_at, updated_at) VALUES(:id, :name, :username, :email, :contentHash, :createdAt, :updatedAt)")
     int save(@BindBean UserEntity userEntity);
 
+    /**
+     * Inserta o actualiza un usuario en una sola sentencia (MERGE de H2 usando el id como clave)
+     * @param userEntity
+     * @return 1 si se ha insertado o actualizado
+     */
+    @SqlUpdate("MERGE INTO users (id, name, username, email, content_hash, created_at, updated_at) KEY(id) VALUES(:id, :name, :username, :email, :contentHash, :createdAt, :updatedAt)")
+    int upsert(@BindBean UserEntity userEntity);
+
+    /**
+     * Inserta o actualiza una lista de usuarios por lotes en una sola transacción.
+     * @param userEntities Los usuarios a guardar
+     * @param batchSize Número de filas que se envían en cada lote JDBC
+     * @return Filas afectadas por cada usuario
+     */
+    @Transaction
+    @SqlBatch("MERGE INTO users (id, name, username, email, content_hash, created_at, updated_at) KEY(id) VALUES(:id, :name, :username, :email, :contentHash, :createdAt, :updatedAt)")
+    int[] upsertAll(@BindBean List<UserEntity> userEntities, @BatchChunkSize int batchSize);
+
+    /**
+     * Guarda una lista de usuarios en la BD con un INSERT por lotes, en un solo handle y una sola transacción.
+     * @param userEntities Los usuarios a guardar
+     * @param batchSize Número de filas que se envían en cada lote JDBC
+     * @return Filas afectadas por cada usuario
+     */
+    @Transaction
+    @SqlBatch("INSERT INTO users (id, name, username, email, content_hash, created_at, updated_at) VALUES(:id, :name, :username, :email, :contentHash, :createdAt, :updatedAt)")
+    int[] saveAll(@BindBean List<UserEntity> userEntities, @BatchChunkSize int batchSize);
+
     /**
      * Actualiza un usuario en la BD
      * @param userEntity
      * @param identificator El id que queremos actualizar
      * @return 0 en caso incorrecto, 1 en caso correcto
      */
-    @SqlUpdate("UPDATE users SET id = :identificator, name = :name, username = :username, email = :email, created_at = :createdAt, updated_at = :updatedAt WHERE id = :identificator")
-    int update(@BindBean UserEntity userEntity, @Bind("id") Long identificator);
+    @SqlUpdate("UPDATE users SET id = :identificator, name = :name, username = :username, email = :email, content_hash = :contentHash, created_at = :createdAt, updated_at = :updatedAt WHERE id = :identificator")
+    int update(@BindBean UserEntity userEntity, @Bind("identificator") Long identificator);
 
     /**
-     * Borra un usuario en la BD en base a un ID
+     * Borra un usuario en la BD en base a un ID y devuelve la fila borrada en la misma sentencia (OLD TABLE de H2)
      * @param id
-     * @return 0 en caso incorrecto, 1 en caso correcto
+     * @return El usuario borrado, vacío si no existía
      */
-    @SqlUpdate("DELETE * FROM users WHERE id = :id")
-    int delete(@Bind("id") Long id);
+    @SqlQuery("SELECT * FROM OLD TABLE (DELETE FROM users WHERE id = :id)")
+    Optional<UserEntity> delete(@Bind("id") Long id);
+
+    /**
+     * Obtiene la huella del contenido de cada usuario guardado, indexada por id.
+     * Los usuarios sin huella devuelven una cadena vacía para que se consideren modificados.
+     * @return Mapa de id a huella
+     */
+    @SqlQuery("SELECT id, COALESCE(content_hash, '') AS content_hash FROM users")
+    @KeyColumn("id")
+    @ValueColumn("content_hash")
+    Map<Long, String> findContentHashes();
+
+    /**
+     * Actualiza una lista de usuarios por lotes en una sola transacción.
+     * @param userEntities Los usuarios a actualizar
+     * @param batchSize Número de filas que se envían en cada lote JDBC
+     * @return Filas afectadas por cada usuario
+     */
+    @Transaction
+    @SqlBatch("UPDATE users SET name = :name, username = :username, email = :email, content_hash = :contentHash, updated_at = :updatedAt WHERE id = :id")
+    int[] updateAll(@BindBean List<UserEntity> userEntities, @BatchChunkSize int batchSize);
+
+    /**
+     * Borra una lista de usuarios por lotes en una sola transacción.
+     * @param ids Los ids de los usuarios a borrar
+     * @param batchSize Número de filas que se envían en cada lote JDBC
+     * @return Filas afectadas por cada id
+     */
+    @Transaction
+    @SqlBatch("DELETE FROM users WHERE id = :id")
+    int[] deleteAllById(@Bind("id") List<Long> ids, @BatchChunkSize int batchSize);
+
+    /**
+     * Aplica en una única transacción las inserciones, actualizaciones y borrados de una sincronización.
+     * @param inserts Usuarios nuevos
+     * @param updates Usuarios modificados
+     * @param deletes Ids de los usuarios que ya no existen
+     * @param batchSize Número de filas que se envían en cada lote JDBC
+     */
+    @Transaction
+    default void applyChanges(List<UserEntity> inserts, List<UserEntity> updates, List<Long> deletes, int batchSize) {
+        if (!inserts.isEmpty()) saveAll(inserts, batchSize);
+        if (!updates.isEmpty()) updateAll(updates, batchSize);
+        if (!deletes.isEmpty()) deleteAllById(deletes, batchSize);
+    }
+
+    /**
+     * Aplica en una única transacción las escrituras pendientes de la cola de escritura diferida.
+     * @param upserts Usuarios a insertar o actualizar
+     * @param deletes Ids de los usuarios a borrar
+     * @param batchSize Número de filas que se envían en cada lote JDBC
+     */
+    @Transaction
+    default void applyWrites(List<UserEntity> upserts, List<Long> deletes, int batchSize) {
+        if (!upserts.isEmpty()) upsertAll(upserts, batchSize);
+        if (!deletes.isEmpty()) deleteAllById(deletes, batchSize);
+    }
 
     /**
      * Borra todos los usuarios de la base de datos.
-     * @return
+     * @return Número de filas borradas
      */
-    @SqlUpdate("DELETE * FROM users")
+    @SqlUpdate("DELETE FROM users")
     int deleteAll();
-}
+
+    /**
+     * Vacía la tabla de carga de las recargas completas.
+     */
+    @SqlUpdate("TRUNCATE TABLE users_staging")
+    void clearStaging();
+
+    /**
+     * Carga una lista de usuarios en la tabla de carga por lotes. Los lectores de users no ven estas filas.
+     * @param userEntities Los usuarios a cargar
+     * @param batchSize Número de filas que se envían en cada lote JDBC
+     * @return Filas afectadas por cada usuario
+     */
+    @Transaction
+    @SqlBatch("INSERT INTO users_staging (id, name, username, email, content_hash, created_at, updated_at) VALUES(:id, :name, :username, :email, :contentHash, :createdAt, :updatedAt)")
+    int[] saveAllToStaging(@BindBean List<UserEntity> userEntities, @BatchChunkSize int batchSize);
+
+    /**
+     * Copia el contenido de la tabla de carga a users.
+     * @return Número de filas copiadas
+     */
+    @SqlUpdate("INSERT INTO users (id, name, username, email, content_hash, created_at, updated_at) SELECT id, name, username, email, content_hash, created_at, updated_at FROM users_staging")
+    int copyFromStaging();
+
+    /**
+     * Sustituye el contenido de users por el de la tabla de carga en una única transacción.
+     * Gracias al MVCC de H2 los lectores siguen viendo los datos anteriores hasta el commit, nunca una tabla vacía o a medias.
+     * @return Número de filas de la nueva tabla
+     */
+    @Transaction
+    default int swapFromStaging() {
+        deleteAll();
+        return copyFromStaging();
+    }
+}
\ No newline at end of file
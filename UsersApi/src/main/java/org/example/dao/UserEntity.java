@@ -3,7 +3,11 @@ package org.example.dao;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.HexFormat;
 
 @Data
 @AllArgsConstructor
@@ -14,4 +18,19 @@ public final class UserEntity {
     private final String email;
     private final LocalDateTime createdAt = LocalDateTime.now();
     private final LocalDateTime updatedAt = LocalDateTime.now();
+
+    /**
+     * Huella SHA-256 de los datos del usuario (name, username y email). Se guarda en la columna content_hash
+     * para detectar al sincronizar qué usuarios han cambiado sin comparar campo a campo.
+     * @return Huella en hexadecimal
+     */
+    public String getContentHash() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String content = String.join("\0", name, username, email);
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package org.example.database;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import org.example.config.Config;
 import org.example.dao.UserDao;
 import org.jdbi.v3.core.Jdbi;
@@ -11,10 +13,24 @@ import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.stream.Collectors;
 
 public class JdbiManager {
+    /**
+     * Migraciones del esquema en orden. El número tras la "V" es la versión que se registra en schema_version,
+     * por lo que nunca se deben modificar ni reordenar las ya publicadas: los cambios van en un script nuevo.
+     */
+    private static final List<String> MIGRATIONS = List.of(
+            "db/migration/V1__create_users.sql",
+            "db/migration/V2__users_lookup_indexes.sql",
+            "db/migration/V3__users_content_hash.sql",
+            "db/migration/V4__users_staging.sql"
+    );
     private final Jdbi jdbi;
+    private final HikariDataSource dataSource;
+    private final PoolMetricsTracker poolMetrics = new PoolMetricsTracker();
     private static JdbiManager instance;
     private final Logger logger = LoggerFactory.getLogger(JdbiManager.class);
 
@@ -23,12 +39,29 @@ public class JdbiManager {
      */
     private JdbiManager() {
         logger.info("Creando instancia de JdbiMangaer y configurando JDBI.");
-        String url = Config.getInstance().getDatabaseUrl();
+        Config config = Config.getInstance();
+
+        // Pool de conexiones para que cada llamada al DAO reutilice una conexión en lugar de abrir una nueva
+        HikariConfig poolConfig = new HikariConfig();
+        poolConfig.setPoolName("users-pool");
+        poolConfig.setJdbcUrl(config.getDatabaseUrl());
+        poolConfig.setMinimumIdle(config.getDatabasePoolMinIdle());
+        poolConfig.setMaximumPoolSize(config.getDatabasePoolMaxSize());
+        poolConfig.setConnectionTimeout(config.getDatabasePoolConnectionTimeoutMs());
+        poolConfig.setIdleTimeout(config.getDatabasePoolIdleTimeoutMs());
+        poolConfig.setMetricsTrackerFactory(poolMetrics);
+        this.dataSource = new HikariDataSource(poolConfig);
 
-        this.jdbi = Jdbi.create(url);
+        this.jdbi = Jdbi.create(dataSource);
 
         jdbi.installPlugin(new SqlObjectPlugin());
-        executeSqlScriptFromResources("tables.sql");
+        try {
+            migrate();
+        } catch (RuntimeException e) {
+            // Sin esquema completo la aplicacion no puede arrancar, se libera el pool antes de propagar el error
+            dataSource.close();
+            throw e;
+        }
     }
 
     /**
@@ -50,20 +83,77 @@ public class JdbiManager {
     }
 
     /**
-     * Ejecuta un script SQL desde la carpeta resources.
+     * Devuelve las métricas actuales del pool de conexiones.
+     * @return Conexiones activas, ociosas y tiempos de espera
+     */
+    public PoolMetrics getPoolMetrics() {
+        return poolMetrics.snapshot();
+    }
+
+    /**
+     * Cierra el pool de conexiones.
+     */
+    public void close() {
+        logger.info("Cerrando el pool de conexiones de la base de datos.");
+        dataSource.close();
+    }
+
+    /**
+     * Aplica las migraciones pendientes sin borrar datos. La versión aplicada se guarda en la tabla schema_version,
+     * de modo que al reiniciar con una BD persistente solo se ejecutan los scripts nuevos.
+     * Si una migración falla se detiene el arranque, para no trabajar sobre un esquema a medias.
+     * @throws IllegalStateException si no se puede aplicar alguna migración
+     */
+    private void migrate() {
+        jdbi.useHandle(handle -> handle.execute(
+                "CREATE TABLE IF NOT EXISTS schema_version(version INT PRIMARY KEY, script VARCHAR(255) NOT NULL, applied_at TIMESTAMP NOT NULL)"));
+        int currentVersion = jdbi.withHandle(handle ->
+                handle.createQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version").mapTo(Integer.class).one());
+        logger.info("Version actual del esquema: {}", currentVersion);
+
+        for (String script : MIGRATIONS) {
+            int version = versionOf(script);
+            if (version <= currentVersion) continue;
+            // Si una migracion falla se lanza la excepcion y no se aplican las siguientes
+            executeSqlScriptFromResources(script, version);
+        }
+    }
+
+    /**
+     * Obtiene la versión de un script de migración a partir de su nombre (V{version}__descripcion.sql).
+     * @param resourcePath Ruta del script.
+     * @return Número de versión
+     */
+    private static int versionOf(String resourcePath) {
+        String fileName = resourcePath.substring(resourcePath.lastIndexOf('/') + 1);
+        return Integer.parseInt(fileName.substring(1, fileName.indexOf("__")));
+    }
+
+    /**
+     * Ejecuta un script SQL de migración desde la carpeta resources y registra su versión en la misma transacción.
      * @param resourcePath Ruta del script.
+     * @param version Versión del esquema que aplica el script.
+     * @throws IllegalStateException si el script no existe o falla; la transacción se deshace y la versión no se registra
      */
-    private void executeSqlScriptFromResources(String resourcePath) {
+    private void executeSqlScriptFromResources(String resourcePath, int version) {
         logger.debug("Cargando script SQL desde recursos: " + resourcePath);
         try (InputStream is = getClass().getClassLoader().getResourceAsStream(resourcePath);
              BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
 
             String script = reader.lines().collect(Collectors.joining("\n"));
-            // Ejecuta el script en un solo handle
-            jdbi.useHandle(handle -> handle.createScript(script).execute());
+            // Ejecuta el script y registra la version en un solo handle
+            jdbi.useTransaction(handle -> {
+                handle.createScript(script).execute();
+                handle.createUpdate("INSERT INTO schema_version (version, script, applied_at) VALUES (:version, :script, :appliedAt)")
+                        .bind("version", version)
+                        .bind("script", resourcePath)
+                        .bind("appliedAt", LocalDateTime.now())
+                        .execute();
+            });
+            logger.info("Migracion aplicada: {}", resourcePath);
         } catch (Exception e) {
             logger.error("Error al ejecutar el script SQL desde recursos: {}", resourcePath, e);
-            logger.error("Error: {}", e.getMessage());
+            throw new IllegalStateException("No se ha podido aplicar la migracion " + resourcePath + ": " + e.getMessage(), e);
         }
     }
 }
@@ -0,0 +1,20 @@
+package org.example.database;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Instantánea de las métricas del pool de conexiones de la base de datos.
+ * Campos: conexiones activas, ociosas y totales, hilos esperando una conexión y tiempos de espera.
+ */
+@Data
+@AllArgsConstructor
+public final class PoolMetrics {
+    private final int activeConnections;
+    private final int idleConnections;
+    private final int totalConnections;
+    private final int pendingThreads;
+    private final double averageWaitMillis;
+    private final double maxWaitMillis;
+    private final long timeouts;
+}
@@ -0,0 +1,62 @@
+package org.example.database;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.IMetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recoge las métricas del pool de conexiones: el estado de las conexiones lo aporta Hikari
+ * y el tiempo de espera para obtener una conexión se acumula en cada adquisición.
+ */
+public class PoolMetricsTracker implements IMetricsTrackerFactory, IMetricsTracker {
+    private volatile PoolStats poolStats;
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return this;
+    }
+
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        acquisitions.increment();
+        waitNanos.add(elapsedAcquiredNanos);
+        maxWaitNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+    }
+
+    @Override
+    public void recordConnectionTimeout() {
+        timeouts.increment();
+    }
+
+    /**
+     * Devuelve el estado actual del pool.
+     * @return Métricas del pool
+     */
+    public PoolMetrics snapshot() {
+        PoolStats stats = poolStats;
+        long count = acquisitions.sum();
+        double averageWait = count == 0 ? 0 : nanosToMillis(waitNanos.sum()) / count;
+        return new PoolMetrics(
+                stats == null ? 0 : stats.getActiveConnections(),
+                stats == null ? 0 : stats.getIdleConnections(),
+                stats == null ? 0 : stats.getTotalConnections(),
+                stats == null ? 0 : stats.getPendingThreads(),
+                averageWait,
+                nanosToMillis(maxWaitNanos.get()),
+                timeouts.sum()
+        );
+    }
+
+    private static double nanosToMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
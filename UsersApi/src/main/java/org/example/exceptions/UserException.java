@@ -21,6 +21,23 @@ public sealed class UserException extends Exception {
     }
 
     public static final class ApiException extends UserException {
-        public ApiException(String message) { super(message); }
+        // Codigo HTTP de la respuesta que causo el error, -1 si no hubo respuesta
+        private final int code;
+
+        public ApiException(String message) { this(message, -1); }
+
+        public ApiException(String message, int code) {
+            super(message);
+            this.code = code;
+        }
+
+        public int getCode() { return code; }
+    }
+
+    /**
+     * La llamada a la API no se ha hecho porque se ha rechazado en local (circuito abierto o sin capacidad).
+     */
+    public static final class RejectedException extends UserException {
+        public RejectedException(String message) { super(message); }
     }
 }
@@ -0,0 +1,34 @@
+package org.example.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Set;
+
+/**
+ * Resultado de sincronizar el repositorio local con la API.
+ * Campos: usuarios {@code inserted}, {@code updated}, {@code unchanged} y {@code deleted},
+ * y {@code fullRefresh} si se ha recargado la tabla entera a través de la tabla de carga.
+ * {@code staleIds} son los ids de los usuarios actualizados o borrados, cuyas copias en caché ya no son válidas
+ */
+@Data
+@AllArgsConstructor
+public final class SyncResult {
+    private final int inserted;
+    private final int updated;
+    private final int unchanged;
+    private final int deleted;
+    private final boolean fullRefresh;
+    private final Set<Long> staleIds;
+
+    public SyncResult(int inserted, int updated, int unchanged, int deleted, boolean fullRefresh) {
+        this(inserted, updated, unchanged, deleted, fullRefresh, Set.of());
+    }
+
+    /**
+     * @return Número de filas que se han escrito o borrado en la sincronización
+     */
+    public int changed() {
+        return inserted + updated + deleted;
+    }
+}
@@ -1,103 +1,285 @@
 package org.example.repository;
 
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Single;
 import lombok.AllArgsConstructor;
+import org.example.config.Config;
 import org.example.exceptions.UserException;
 import org.example.mapper.UserMapper;
 import org.example.models.User;
+import org.example.resilience.AdaptiveConcurrencyLimiter;
+import org.example.resilience.Bulkhead;
+import org.example.resilience.CircuitBreaker;
+import org.example.resilience.HedgingPolicy;
+import org.example.resilience.ResilienceMetrics;
+import org.example.resilience.RetryPolicy;
+import org.example.rest.UserApiEntity;
+import org.example.rest.UserJsonStream;
 import org.example.rest.UsersApiDao;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import retrofit2.Response;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Repositorio que se conecta con la API REST de usuarios.
+ * Las llamadas no se hacen hasta que alguien se suscribe y son asincronas: ningun hilo se queda bloqueado
+ * esperando la respuesta, por lo que las peticiones en vuelo las limita el cliente HTTP y no el numero de hilos.
+ * Todas las llamadas pasan por un compartimento (uno para lecturas y otro para escrituras) y por un limite de
+ * concurrencia adaptativo compartido que se ajusta a la capacidad real de la API. Las lecturas pasan ademas por un
+ * circuit breaker que falla al instante mientras la API esta caida, y las busquedas por id lanzan una peticion
+ * duplicada cuando la primera tarda mas de lo habitual. Los fallos transitorios de los metodos idempotentes se
+ * reintentan; si aun asi fallan se devuelve el error, y solo un 404 se considera que el usuario no existe.
+ */
 @AllArgsConstructor
 public class UserRemoteRepositoryImpl implements UsersRepository {
     private final UsersApiDao usersApiDao;
+    private final CircuitBreaker circuitBreaker;
+    private final HedgingPolicy hedgingPolicy;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final Bulkhead readBulkhead;
+    private final Bulkhead writeBulkhead;
+    private final RetryPolicy retryPolicy;
+    // Validadores de la ultima lista completa descargada, para las peticiones condicionales
+    private final AtomicReference<Validators> validators = new AtomicReference<>(Validators.NONE);
     private final Logger logger = LoggerFactory.getLogger(UserRemoteRepositoryImpl.class);
 
+    /**
+     * ETag y Last-Modified de una respuesta, cualquiera de los dos puede ser null si la API no lo envia.
+     */
+    private record Validators(String etag, String lastModified) {
+        static final Validators NONE = new Validators(null, null);
+    }
+
+    public UserRemoteRepositoryImpl(UsersApiDao usersApiDao) {
+        this(usersApiDao,
+                new CircuitBreaker("users-api"),
+                new HedgingPolicy(),
+                new AdaptiveConcurrencyLimiter(),
+                new Bulkhead("users-api-read", Config.getInstance().getBulkheadReadMaxConcurrent()),
+                new Bulkhead("users-api-write", Config.getInstance().getBulkheadWriteMaxConcurrent()),
+                new RetryPolicy());
+    }
+
     @Override
     public Single<List<User>> getAll() {
         logger.info("Obteniendo todos los usuarios de la API");
-        try {
-            var response = usersApiDao.getAll().execute();
-            if (!response.isSuccessful()) throw new UserException.ApiException("Error al obtener usuarios de la API");
-            if(response.body() == null) return Single.just( new ArrayList<>());
-            return Single.just(response.body().stream().map(UserMapper::toUser).toList());
-        } catch (Exception e) {
-            logger.error(e.getMessage());
-            return Single.error(e);
-        }
+        return read(usersApiDao.getAll()).map(response -> {
+            if (!response.isSuccessful()) throw new UserException.ApiException("Error al obtener usuarios de la API", response.code());
+            return toUsers(response.body());
+        }).doOnError(e -> logger.error(e.getMessage()));
+    }
+
+    /**
+     * Recorre todos los usuarios de la API leyendo la respuesta en streaming y los emite uno a uno con contrapresion,
+     * de forma que nunca estan en memoria a la vez el cuerpo completo, la lista de entidades y la de usuarios.
+     * Los reintentos y el circuito se aplican a la peticion; un error a mitad del cuerpo llega como error del Flowable.
+     * @return Flowable de usuarios en el orden de la API
+     */
+    public Flowable<User> streamAll() {
+        logger.info("Recorriendo todos los usuarios de la API en streaming");
+        return read(usersApiDao.streamAll()).flatMapPublisher(response -> {
+            if (!response.isSuccessful()) throw new UserException.ApiException("Error al obtener usuarios de la API. Error: " + response.code(), response.code());
+            return UserJsonStream.parse(response.body());
+        }).map(UserMapper::toUser).doOnError(e -> logger.error(e.getMessage()));
+    }
+
+    /**
+     * Obtiene todos los usuarios de la API solo si han cambiado desde la ultima vez que se pidieron por este metodo.
+     * Se envian los validadores (ETag / Last-Modified) de la ultima respuesta; si la API responde 304 el Maybe
+     * se completa vacio sin descargar ni deserializar la lista. Si ha cambiado, la lista se decodifica en streaming
+     * directamente a usuarios y los validadores solo se guardan cuando se ha leido entera.
+     * @return La lista de usuarios, o vacio si no ha cambiado
+     */
+    public Maybe<List<User>> getAllIfModified() {
+        Validators current = validators.get();
+        logger.info("Obteniendo todos los usuarios de la API si han cambiado");
+        return read(usersApiDao.getAllIfModified(current.etag(), current.lastModified())).flatMapMaybe(response -> {
+            if (response.code() == 304) {
+                logger.info("La lista de usuarios de la API no ha cambiado");
+                return Maybe.<List<User>>empty();
+            }
+            if (!response.isSuccessful()) throw new UserException.ApiException("Error al obtener usuarios de la API. Error: " + response.code(), response.code());
+            Validators received = new Validators(response.headers().get("ETag"), response.headers().get("Last-Modified"));
+            return UserJsonStream.parse(response.body()).map(UserMapper::toUser).toList()
+                    .doOnSuccess(users -> validators.set(received))
+                    .toMaybe();
+        }).doOnError(e -> logger.error(e.getMessage()));
+    }
+
+    /**
+     * Olvida los validadores guardados para que la siguiente peticion condicional descargue la lista completa.
+     * Se usa cuando la lista recibida no se ha podido aplicar y hay que volver a pedirla aunque no haya cambiado.
+     */
+    public void resetValidators() {
+        validators.set(Validators.NONE);
+    }
+
+    @Override
+    public Single<List<User>> getPage(Long afterId, int limit) {
+        logger.info("Obteniendo pagina de " + limit + " usuarios de la API despues del id: " + afterId);
+        // La API filtra con "mayor o igual", por eso se pide a partir del siguiente id
+        return read(usersApiDao.getPage(afterId + 1, limit)).map(response -> {
+            if (!response.isSuccessful()) throw new UserException.ApiException("Error al obtener la pagina de usuarios. Error: " + response.code(), response.code());
+            return toUsers(response.body());
+        }).doOnError(e -> logger.error(e.getMessage()));
     }
 
     @Override
     public Maybe<User> getById(Long id) {
         logger.info("Obteniendo usuario por ID: " + id);
-        try {
-            var response = usersApiDao.getById(id).execute();
-            if (!response.isSuccessful()) {
-                if(response.code() == 404) throw new UserException.ApiException("El usuario no existe (404)");
-                else throw new UserException.ApiException("Error al obtener usuario por ID: " + id + ". Error: " + response.code());
+        // Buscar por id es idempotente, por lo que se puede duplicar la peticion si tarda demasiado
+        return hedgingPolicy.execute(() -> read(usersApiDao.getById(id)))
+                .flatMapMaybe(response -> existing(response, "Error al obtener usuario por ID: " + id))
+                .map(UserMapper::toUser)
+                .doOnError(e -> logger.error(e.getMessage()));
+    }
+
+    @Override
+    public Maybe<User> getByUsername(String username) {
+        logger.info("Obteniendo usuario por username: " + username);
+        return read(usersApiDao.getByUsername(username)).flatMapMaybe(response -> {
+            if (!response.isSuccessful()) throw new UserException.ApiException("Error al obtener usuario por username: " + username + ". Error: " + response.code(), response.code());
+            return firstOf(response.body());
+        }).doOnError(e -> logger.error(e.getMessage()));
+    }
+
+    @Override
+    public Maybe<User> getByEmail(String email) {
+        logger.info("Obteniendo usuario por email: " + email);
+        return read(usersApiDao.getByEmail(email)).flatMapMaybe(response -> {
+            if (!response.isSuccessful()) throw new UserException.ApiException("Error al obtener usuario por email: " + email + ". Error: " + response.code(), response.code());
+            return firstOf(response.body());
+        }).doOnError(e -> logger.error(e.getMessage()));
+    }
+
+    /**
+     * La API devuelve las busquedas por atributo como lista, nos quedamos con el primero si lo hay (vacio si no).
+     */
+    private Maybe<User> firstOf(List<UserApiEntity> users) {
+        if (users == null || users.isEmpty()) return Maybe.empty();
+        return Maybe.just(UserMapper.toUser(users.get(0)));
+    }
+
+    /**
+     * Pasa una lectura (GET) por los reintentos, su compartimento, el circuit breaker y el limite de concurrencia.
+     * Solo los errores de red y las respuestas 5xx cuentan como fallo de la API; un 404 es una respuesta valida
+     * de una API que funciona. Cada reintento vuelve a pasar por el compartimento, el circuito y el limite.
+     */
+    private <T> Single<Response<T>> read(Single<Response<T>> call) {
+        return retryPolicy.execute(
+                readBulkhead.execute(circuitBreaker.protect(limited(call), response -> response.code() >= 500)),
+                "GET", UserRemoteRepositoryImpl::isTransient);
+    }
+
+    /**
+     * Pasa una escritura por los reintentos (si el metodo es idempotente), su compartimento y el limite de concurrencia.
+     * @param method Metodo HTTP de la escritura
+     */
+    private <T> Single<Response<T>> write(String method, Single<Response<T>> call) {
+        return retryPolicy.execute(writeBulkhead.execute(limited(call)), method, UserRemoteRepositoryImpl::isTransient);
+    }
+
+    /**
+     * Respuestas que pueden salir bien si se repite la peticion: timeout del servidor (408), demasiadas
+     * peticiones (429) y errores del servidor salvo "no implementado" (501).
+     */
+    private static boolean isTransient(Response<?> response) {
+        int code = response.code();
+        return code == 408 || code == 429 || (code >= 500 && code != 501);
+    }
+
+    /**
+     * Las respuestas 429 (demasiadas peticiones) y 503 (no disponible) indican que la API esta saturada y bajan el limite.
+     */
+    private <T> Single<Response<T>> limited(Single<Response<T>> call) {
+        return concurrencyLimiter.execute(call, response -> response.code() == 429 || response.code() == 503);
+    }
+
+    /**
+     * Devuelve el estado del circuit breaker, las peticiones duplicadas, el limite de concurrencia, los compartimentos
+     * y los reintentos.
+     * @return Métricas de resiliencia
+     */
+    public ResilienceMetrics getResilienceMetrics() {
+        return new ResilienceMetrics(
+                circuitBreaker.getState(),
+                circuitBreaker.getOpens(),
+                circuitBreaker.getRejected(),
+                hedgingPolicy.getCalls(),
+                hedgingPolicy.getHedges(),
+                hedgingPolicy.getHedgeWins(),
+                hedgingPolicy.currentDelayMillis(),
+                concurrencyLimiter.getLimit(),
+                concurrencyLimiter.getInFlight(),
+                concurrencyLimiter.getQueued(),
+                concurrencyLimiter.getRejected(),
+                concurrencyLimiter.getDrops(),
+                readBulkhead.getInUse(),
+                writeBulkhead.getInUse(),
+                readBulkhead.getRejected() + writeBulkhead.getRejected(),
+                retryPolicy.getRetries(),
+                retryPolicy.getExhausted(),
+                retryPolicy.getBudgetAvailable()
+        );
+    }
+
+    private List<User> toUsers(List<UserApiEntity> users) {
+        if (users == null) return new ArrayList<>();
+        return users.stream().map(UserMapper::toUser).toList();
+    }
+
+    /**
+     * Comprueba la respuesta de una busqueda por ID y devuelve el usuario, vacio si no existe (404)
+     * o un error si la API ha fallado.
+     * @param response Respuesta de la API
+     * @param errorMessage Mensaje del error cuando la API falla por algo distinto a no encontrarlo
+     */
+    private Maybe<UserApiEntity> existing(Response<UserApiEntity> response, String errorMessage) {
+        if (!response.isSuccessful()) {
+            if (response.code() == 404) {
+                logger.info("El usuario no existe (404)");
+                return Maybe.empty();
             }
-            return Maybe.just(UserMapper.toUser(response.body()));
-        }
-        catch (Exception e) {
-            logger.error(e.getMessage());
-            return Maybe.empty();
+            return Maybe.error(new UserException.ApiException(errorMessage + ". Error: " + response.code(), response.code()));
         }
+        return Maybe.just(response.body());
     }
 
     @Override
     public Maybe<User> save(User user) {
         logger.info("Guardando usuario" + user);
-        try {
-            var response = usersApiDao.create(UserMapper.toUserApiEntity(user)).execute();
-            if (!response.isSuccessful()) throw new UserException.ApiException("Error al guardar usuario. Error: " + response.code());
+        return write("POST", usersApiDao.create(UserMapper.toUserApiEntity(user))).flatMapMaybe(response -> {
+            if (!response.isSuccessful()) throw new UserException.ApiException("Error al guardar usuario. Error: " + response.code(), response.code());
             return Maybe.just(UserMapper.toUser(response.body()));
-        }
-        catch (Exception e) {
-            logger.error(e.getMessage());
-            return Maybe.error(e);
-        }
+        }).doOnError(e -> logger.error(e.getMessage()));
     }
 
     @Override
     public Maybe<User> delete(Long id) {
         logger.info("Eliminando usuario por ID: " + id);
-        try {
-            var user = usersApiDao.getById(id).execute();
-            if(!user.isSuccessful()) {
-                if(user.code() == 404) throw new UserException.ApiException("El usuario no existe (404)");
-                else throw new UserException.ApiException("Error al buscar el usuario. Error: " + user.code());
-            }
-            var deleted = usersApiDao.delete(id).execute();
-            if (!deleted.isSuccessful()) throw new UserException.ApiException("Error al eliminar usuario. Error: " + deleted.code());
-            return Maybe.just(UserMapper.toUser(user.body()));
-        }
-        catch (Exception e) {
-            logger.error(e.getMessage());
-            return Maybe.empty();
-        }
+        return read(usersApiDao.getById(id))
+                .flatMapMaybe(response -> existing(response, "Error al buscar el usuario"))
+                .flatMap(user -> write("DELETE", usersApiDao.delete(id)).flatMapMaybe(deleted -> {
+                    if (!deleted.isSuccessful()) throw new UserException.ApiException("Error al eliminar usuario. Error: " + deleted.code(), deleted.code());
+                    return Maybe.just(UserMapper.toUser(user));
+                }))
+                .doOnError(e -> logger.error(e.getMessage()));
     }
 
     @Override
     public Maybe<User> update(User user, Long id) {
         logger.info("Actualizando usuario por ID: " + id + "Nuevo usuario: " + user);
-        try {
-            var userById = usersApiDao.getById(id).execute(); //Cambio el nombre porque el parametro ya se llama user
-            if (!userById.isSuccessful()) {
-                if (userById.code() == 404) throw new UserException.ApiException("El usuario no existe (404)");
-                else throw new UserException.ApiException("Error al buscar el usuario. Error: " + userById.code());
-            }
-            var response = usersApiDao.update(id, UserMapper.toUserApiEntity(user)).execute();
-            if (!response.isSuccessful()) throw new UserException.ApiException("Error al actualizar usuario. Error: " + response.code());
-            return Maybe.just(UserMapper.toUser(response.body()));
-        }
-        catch (Exception e) {
-            logger.error(e.getMessage());
-            return Maybe.empty();
-        }
+        return read(usersApiDao.getById(id))
+                .flatMapMaybe(response -> existing(response, "Error al buscar el usuario"))
+                .flatMap(userById -> write("PUT", usersApiDao.update(id, UserMapper.toUserApiEntity(user))).flatMapMaybe(response -> {
+                    if (!response.isSuccessful()) throw new UserException.ApiException("Error al actualizar usuario. Error: " + response.code(), response.code());
+                    return Maybe.just(UserMapper.toUser(response.body()));
+                }))
+                .doOnError(e -> logger.error(e.getMessage()));
     }
 }
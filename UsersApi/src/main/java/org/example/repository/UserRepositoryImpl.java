@@ -1,26 +1,44 @@
 package org.example.repository;
 
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.core.Single;
 import lombok.AllArgsConstructor;
+import org.example.config.AppSchedulers;
+import org.example.config.Config;
 import org.example.dao.UserDao;
 import org.example.dao.UserEntity;
+import org.example.exceptions.UserException;
 import org.example.mapper.UserMapper;
+import org.example.models.SyncResult;
 import org.example.models.User;
+import org.jdbi.v3.core.result.ResultIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Clase que representa el repositorio que se conectacon la base de datos embebida.
+ * Las operaciones no acceden a la BD hasta que alguien se suscribe y se ejecutan en el scheduler de JDBC.
  */
 @AllArgsConstructor
 public class UserRepositoryImpl implements UsersRepository{
     private UserDao dao;
+    private final Scheduler scheduler;
     private final Logger logger = LoggerFactory.getLogger(UserRepositoryImpl.class);
 
+    public UserRepositoryImpl(UserDao dao) {
+        this(dao, AppSchedulers.jdbc());
+    }
+
     /**
      * Obtiene toda la lista de usuarios de la base de datos en forma de Single para reactividad.
      * @return
@@ -28,13 +46,35 @@ public class UserRepositoryImpl implements UsersRepository{
     @Override
     public Single<List<User>> getAll() {
         logger.info("Obteninendo todos los usuarios");
-        try {
-            List<User> userList = dao.findAll().stream().map(UserMapper::toUser).toList();
-            return Single.just(userList);
-        }
-        catch (Exception e) {
-            return Single.error(e);
-        }
+        return Single.fromCallable(() -> dao.findAll().stream().map(UserMapper::toUser).toList())
+                .subscribeOn(scheduler);
+    }
+
+    /**
+     * Obtiene una página de usuarios de la base de datos usando el último id leído como cursor.
+     * @param afterId
+     * @param limit
+     * @return
+     */
+    @Override
+    public Single<List<User>> getPage(Long afterId, int limit) {
+        logger.info("Obteniendo pagina de " + limit + " usuarios despues del id: " + afterId);
+        return Single.fromCallable(() -> dao.findPage(afterId, limit).stream().map(UserMapper::toUser).toList())
+                .subscribeOn(scheduler);
+    }
+
+    /**
+     * Recorre todos los usuarios de la base de datos con un cursor y los emite uno a uno con contrapresión,
+     * de forma que la memoria usada no depende del tamaño de la tabla. El cursor se cierra al completar o cancelar.
+     * @return Flowable de usuarios ordenados por id
+     */
+    public Flowable<User> streamAll() {
+        logger.info("Recorriendo todos los usuarios en streaming");
+        return Flowable.using(
+                () -> dao.streamAll(Config.getInstance().getDatabaseFetchSize()).iterator(),
+                iterator -> Flowable.<UserEntity>fromIterable(() -> iterator),
+                ResultIterator::close
+        ).map(UserMapper::toUser).subscribeOn(scheduler);
     }
 
     /**
@@ -45,42 +85,86 @@ public class UserRepositoryImpl implements UsersRepository{
     @Override
     public Maybe<User> getById(Long id) {
         logger.info("Obteniendo usuario con id: " + id);
-        try {
-            // Obtenemos el UserEntity
-            Optional<UserEntity> userEntity = dao.findById(id);
-            // Si está presente, lo mapeamos a usuario y lo devolvemos con el maybe.
-            if(userEntity.isPresent()) {
-                return Maybe.just(UserMapper.toUser(userEntity.get()));
+        // Si está presente, lo mapeamos a usuario; si no, el null hace que el Maybe se complete vacío.
+        return Maybe.fromCallable(() -> dao.findById(id).map(UserMapper::toUser).orElse(null))
+                .subscribeOn(scheduler);
+    }
+
+    /**
+     * Obtiene los usuarios de una lista de ids con una única consulta por cada lote de ids
+     * @param ids
+     * @return Los usuarios encontrados, los ids que no existen no aparecen
+     */
+    public Single<List<User>> getByIds(Collection<Long> ids) {
+        logger.info("Obteniendo " + ids.size() + " usuarios por id");
+        if (ids.isEmpty()) return Single.just(List.of());
+        return Single.<List<User>>fromCallable(() -> {
+            List<Long> pending = List.copyOf(ids);
+            List<User> users = new ArrayList<>();
+            // Se parte en lotes para no construir sentencias con miles de parametros
+            int batchSize = Config.getInstance().getDatabaseBatchSize();
+            for (int from = 0; from < pending.size(); from += batchSize) {
+                List<Long> batch = pending.subList(from, Math.min(from + batchSize, pending.size()));
+                dao.findByIds(batch).forEach(entity -> users.add(UserMapper.toUser(entity)));
             }
-            // Si no está presente, devolvemos el Maybe vacío.
-            return Maybe.empty();
-        }
-        catch (Exception e) {
-            return Maybe.error(e);
-        }
+            return users;
+        }).subscribeOn(scheduler);
+    }
+
+    /**
+     * Obtiene un usuario en base a su username
+     * @param username
+     * @return
+     */
+    @Override
+    public Maybe<User> getByUsername(String username) {
+        logger.info("Obteniendo usuario con username: " + username);
+        return Maybe.fromCallable(() -> dao.findByUsername(username).map(UserMapper::toUser).orElse(null))
+                .subscribeOn(scheduler);
+    }
+
+    /**
+     * Obtiene un usuario en base a su email
+     * @param email
+     * @return
+     */
+    @Override
+    public Maybe<User> getByEmail(String email) {
+        logger.info("Obteniendo usuario con email: " + email);
+        return Maybe.fromCallable(() -> dao.findByEmail(email).map(UserMapper::toUser).orElse(null))
+                .subscribeOn(scheduler);
     }
 
     /**
-     * Inserta un usuario en la BD embebida
+     * Guarda un usuario en la BD embebida, insertandolo o actualizandolo si ya existia, en una sola sentencia
      * @param user
      * @return
      */
     @Override
     public Maybe<User> save(User user) {
         logger.info("Guardando usuario: " + user.toString());
-        try {
+        return Maybe.fromCallable(() -> {
             UserEntity usuariotoSave = UserMapper.toUserEntity(user);
             // Si el numero de filas afectadas es mayor a cero, se ha guardado correctamente
-            if(dao.save(usuariotoSave) > 0){
-                return Maybe.just(user);
-            }
-            else {
-                return Maybe.empty();
-            }
-        }
-        catch (Exception e) {
-            return Maybe.error(e);
-        }
+            return dao.upsert(usuariotoSave) > 0 ? user : null;
+        }).subscribeOn(scheduler);
+    }
+
+    /**
+     * Inserta una lista de usuarios en la BD embebida con un INSERT por lotes en una única transacción.
+     * El tamaño de cada lote se toma de la configuración.
+     * @param users
+     * @return Número de usuarios guardados
+     */
+    public Single<Integer> saveAll(List<User> users) {
+        logger.info("Guardando " + users.size() + " usuarios por lotes");
+        if (users.isEmpty()) return Single.just(0);
+        return Single.fromCallable(() -> {
+            List<UserEntity> usuariosToSave = users.stream().map(UserMapper::toUserEntity).toList();
+            int[] filas = dao.saveAll(usuariosToSave, Config.getInstance().getDatabaseBatchSize());
+            // Cada posición indica las filas afectadas por un usuario, contamos los que se han guardado
+            return (int) Arrays.stream(filas).filter(f -> f != 0).count();
+        }).subscribeOn(scheduler);
     }
 
     /**
@@ -91,21 +175,13 @@ public class UserRepositoryImpl implements UsersRepository{
     @Override
     public Maybe<User> delete(Long id) {
         logger.info("Eliminando usuario con id: " + id);
-        try {
-            Optional<UserEntity> oldUsuario = dao.findById(id);
-            // SI esta presente y el numero de filas afectadas es mayor a 0 se ha borrado correctamente
-            if(oldUsuario.isPresent() && dao.delete(id) > 0){
-                return Maybe.just(dao.findById(id).map(UserMapper::toUser).get());
-            }
-            else return Maybe.empty();
-        }
-        catch (Exception e) {
-            return Maybe.error(e);
-        }
+        // El DAO borra y devuelve la fila borrada en la misma sentencia, si no existia viene vacio
+        return Maybe.fromCallable(() -> dao.delete(id).map(UserMapper::toUser).orElse(null))
+                .subscribeOn(scheduler);
     }
 
     /**
-     * Dado un usuario actualizado por parametro y un ID, lo busca en la BD, y si existe, se actualizan los datos. Por el contrario, se devuelve un optional vacio.
+     * Dado un usuario actualizado por parametro y un ID, se actualizan los datos si existe en la BD. Por el contrario, se devuelve un optional vacio.
      * @param user
      * @param id
      * @return
@@ -113,26 +189,107 @@ public class UserRepositoryImpl implements UsersRepository{
     @Override
     public Maybe<User> update(User user, Long id) {
         logger.info("Actualizando usuario con id: " + id);
-        try {
+        return Maybe.fromCallable(() -> {
             UserEntity usuarioToUpdate = UserMapper.toUserEntity(user);
-            Optional<UserEntity> oldUsuario = dao.findById(id);
-            // SI esta presente y el numero de filas afectadas es mayor a 0 se ha actualizado correctamente
-            if(oldUsuario.isPresent() && dao.update(usuarioToUpdate ,id) > 0){
-                return Maybe.just(user);
+            // Si el numero de filas afectadas es mayor a 0 existia y se ha actualizado correctamente
+            return dao.update(usuarioToUpdate ,id) > 0 ? user : null;
+        }).subscribeOn(scheduler);
+    }
+
+    /**
+     * Aplica por lotes y en una única transacción un conjunto de guardados y borrados.
+     * @param upserts Usuarios a insertar o actualizar
+     * @param deletes Ids de los usuarios a borrar
+     * @return Número de escrituras aplicadas
+     */
+    public Single<Integer> applyWrites(List<User> upserts, List<Long> deletes) {
+        logger.info("Aplicando " + upserts.size() + " guardados y " + deletes.size() + " borrados por lotes");
+        return Single.fromCallable(() -> {
+            List<UserEntity> usuariosToSave = upserts.stream().map(UserMapper::toUserEntity).toList();
+            dao.applyWrites(usuariosToSave, deletes, Config.getInstance().getDatabaseBatchSize());
+            return upserts.size() + deletes.size();
+        }).subscribeOn(scheduler);
+    }
+
+    /**
+     * Sincroniza la BD embebida con la lista de usuarios de la API aplicando solo las diferencias.
+     * Compara cada usuario por id y por la huella de su contenido, y aplica las inserciones, actualizaciones
+     * y borrados por lotes en una única transacción. Si no hay cambios no se escribe nada.
+     * Si la lista obliga a borrar más usuarios locales de los permitidos (por ejemplo una lista vacía con la tabla
+     * llena) se considera una respuesta incompleta de la API y no se aplica nada.
+     * @param remoteUsers Los usuarios de la API
+     * @return Cuantos usuarios se han insertado, actualizado, borrado o estaban sin cambios, y los ids que han cambiado
+     */
+    public Single<SyncResult> synchronize(List<User> remoteUsers) {
+        logger.info("Sincronizando " + remoteUsers.size() + " usuarios con la base de datos");
+        return Single.fromCallable(() -> {
+            Map<Long, String> localHashes = dao.findContentHashes();
+            List<UserEntity> inserts = new ArrayList<>();
+            List<UserEntity> updates = new ArrayList<>();
+            Set<Long> remoteIds = new HashSet<>();
+            int unchanged = 0;
+
+            for (User user : remoteUsers) {
+                UserEntity entity = UserMapper.toUserEntity(user);
+                remoteIds.add(entity.getId());
+                String localHash = localHashes.get(entity.getId());
+                // Si no esta en local es nuevo, si la huella es distinta ha cambiado
+                if (localHash == null) inserts.add(entity);
+                else if (!localHash.equals(entity.getContentHash())) updates.add(entity);
+                else unchanged++;
             }
-            else return Maybe.empty();
-        }
-        catch (Exception e) {
-            return Maybe.error(e);
+            // Los que estan en local pero no en la API se borran
+            List<Long> deletes = localHashes.keySet().stream().filter(id -> !remoteIds.contains(id)).toList();
+            checkDeletes(deletes.size(), localHashes.size(), remoteUsers.size());
+
+            int changes = inserts.size() + updates.size() + deletes.size();
+            boolean fullRefresh = !localHashes.isEmpty()
+                    && changes >= Config.getInstance().getSyncFullRefreshThreshold() * Math.max(localHashes.size(), remoteUsers.size());
+            if (fullRefresh) {
+                // Si ha cambiado casi todo es mas barato recargar la tabla entera de forma atomica
+                reloadThroughStaging(remoteUsers);
+            }
+            else if (changes > 0) {
+                dao.applyChanges(inserts, updates, deletes, Config.getInstance().getDatabaseBatchSize());
+            }
+            Set<Long> staleIds = new HashSet<>(deletes);
+            updates.forEach(entity -> staleIds.add(entity.getId()));
+            return new SyncResult(inserts.size(), updates.size(), unchanged, deletes.size(), fullRefresh, staleIds);
+        }).subscribeOn(scheduler);
+    }
+
+    /**
+     * Comprueba que una sincronización no borra más usuarios locales de los permitidos por la configuración.
+     * @param deletes Usuarios locales que se borrarían
+     * @param localUsers Usuarios locales actuales
+     * @param remoteUsers Usuarios de la lista de la API
+     * @throws UserException.InvalidException si la lista de la API borraría demasiados usuarios
+     */
+    private void checkDeletes(int deletes, int localUsers, int remoteUsers) throws UserException.InvalidException {
+        if (deletes == 0) return;
+        boolean emptyRemote = remoteUsers == 0;
+        if (emptyRemote || deletes > Config.getInstance().getSyncMaxDeleteRatio() * localUsers) {
+            throw new UserException.InvalidException("La lista de la API (" + remoteUsers + " usuarios) borraria "
+                    + deletes + " de " + localUsers + " usuarios locales, no se aplica la sincronizacion");
         }
     }
 
+    /**
+     * Recarga la tabla entera con la lista de usuarios indicada. Los usuarios se cargan primero en la tabla de carga
+     * y despues se sustituyen en una unica transaccion, de modo que los lectores concurrentes siempre ven la tabla
+     * anterior completa o la nueva completa, nunca una tabla vacia o a medias.
+     * @param users
+     * @return Número de usuarios de la tabla tras la recarga
+     */
+    private int reloadThroughStaging(List<User> users) {
+        // La carga lenta se hace en la tabla de carga, fuera de la vista de los lectores
+        dao.clearStaging();
+        dao.saveAllToStaging(users.stream().map(UserMapper::toUserEntity).toList(), Config.getInstance().getDatabaseBatchSize());
+        // El cambio de contenido se hace en una transaccion corta
+        return dao.swapFromStaging();
+    }
+
     public Single<Integer> deleteAll() {
-        try {
-            return Single.just(dao.deleteAll());
-        }
-        catch (Exception e) {
-            return Single.error(e);
-        }
+        return Single.fromCallable(() -> dao.deleteAll()).subscribeOn(scheduler);
     }
 }
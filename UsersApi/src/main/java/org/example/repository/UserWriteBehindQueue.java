@@ -0,0 +1,274 @@
+package org.example.repository;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.disposables.Disposable;
+import org.example.config.AppSchedulers;
+import org.example.config.Config;
+import org.example.models.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cola de escritura diferida sobre el repositorio local. Las escrituras se guardan en memoria por id, de modo que
+ * varias escrituras seguidas del mismo usuario se fusionan en la última, y se aplican por lotes en una transacción
+ * cuando la cola alcanza el tamaño de lote o cada cierto intervalo de tiempo. El hilo que escribe nunca espera a la BD:
+ * si la cola está llena el vaciado se hace en el scheduler de la cola.
+ * Si un lote falla se reintenta fila a fila, y las escrituras que siguen fallando tras el número máximo de intentos
+ * se descartan y se registran en el log para que no bloqueen al resto.
+ */
+public class UserWriteBehindQueue implements AutoCloseable {
+    /**
+     * Escritura pendiente de un usuario. Si el usuario es null se trata de un borrado.
+     * {@code attempts} cuenta las veces que ya ha fallado al aplicarse.
+     */
+    private record PendingWrite(Long id, User user, int attempts) {
+        PendingWrite(Long id, User user) {
+            this(id, user, 0);
+        }
+
+        boolean isDelete() {
+            return user == null;
+        }
+
+        PendingWrite failed() {
+            return new PendingWrite(id, user, attempts + 1);
+        }
+    }
+
+    private final UserRepositoryImpl repository;
+    private final int capacity;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Scheduler scheduler;
+    private final Disposable flushTimer;
+    private final Map<Long, PendingWrite> pending = new LinkedHashMap<>();
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder synchronousWrites = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final LongAdder flushedWrites = new LongAdder();
+    private final LongAdder totalFlushNanos = new LongAdder();
+    private final AtomicLong lastFlushNanos = new AtomicLong();
+
+    private final Logger logger = LoggerFactory.getLogger(UserWriteBehindQueue.class);
+
+    public UserWriteBehindQueue(UserRepositoryImpl repository) {
+        this(repository,
+                Config.getInstance().getWriteBehindCapacity(),
+                Config.getInstance().getWriteBehindBatchSize(),
+                Config.getInstance().getWriteBehindFlushIntervalMs(),
+                Config.getInstance().getWriteBehindMaxAttempts(),
+                AppSchedulers.writeBehind());
+    }
+
+    public UserWriteBehindQueue(UserRepositoryImpl repository, int capacity, int batchSize, long flushIntervalMs, Scheduler scheduler) {
+        this(repository, capacity, batchSize, flushIntervalMs, Config.getInstance().getWriteBehindMaxAttempts(), scheduler);
+    }
+
+    public UserWriteBehindQueue(UserRepositoryImpl repository, int capacity, int batchSize, long flushIntervalMs,
+                                int maxAttempts, Scheduler scheduler) {
+        this.repository = repository;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.scheduler = scheduler;
+        this.flushTimer = scheduler.schedulePeriodicallyDirect(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Encola el guardado (inserción o actualización) de un usuario.
+     * @param user
+     * @return Completa cuando la escritura está en la cola o, si estaba llena, cuando se ha hecho sitio o se ha aplicado
+     */
+    public Completable save(User user) {
+        return enqueue(new PendingWrite(user.getId(), user));
+    }
+
+    /**
+     * Encola el borrado de un usuario.
+     * @param id
+     * @return Completa cuando la escritura está en la cola o, si estaba llena, cuando se ha hecho sitio o se ha aplicado
+     */
+    public Completable delete(long id) {
+        return enqueue(new PendingWrite(id, null));
+    }
+
+    /**
+     * Si hay sitio la escritura se encola en el hilo que llama, sin tocar la BD. Si la cola está llena, el vaciado
+     * se hace en el scheduler de la cola y no en el hilo que escribe (que puede ser el de la respuesta HTTP),
+     * y la escritura termina cuando ese vaciado ha dejado sitio o, si no lo ha dejado, cuando se ha aplicado.
+     */
+    private Completable enqueue(PendingWrite write) {
+        return Completable.defer(() -> {
+            enqueued.increment();
+            if (tryPut(write)) return Completable.complete();
+            return Completable.fromAction(() -> {
+                flush();
+                if (!tryPut(write)) {
+                    // El vaciado no ha liberado sitio: la escritura se aplica ya para no pasar de la capacidad
+                    writeSynchronously(write);
+                }
+            }).subscribeOn(scheduler);
+        });
+    }
+
+    /**
+     * Añade la escritura a la cola si cabe, sustituyendo a la anterior del mismo id.
+     * @param write
+     * @return false si la cola está llena
+     */
+    private boolean tryPut(PendingWrite write) {
+        int depth;
+        synchronized (pending) {
+            if (pending.size() >= capacity && !pending.containsKey(write.id())) return false;
+            // Se quita la escritura anterior del mismo id para quedarnos solo con la ultima
+            if (pending.remove(write.id()) != null) coalesced.increment();
+            pending.put(write.id(), write);
+            depth = pending.size();
+        }
+        if (depth >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            scheduler.scheduleDirect(() -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Aplica una escritura sin pasar por la cola. Se hace bajo el cerrojo de vaciado para que no adelante
+     * a un lote que se este aplicando en ese momento.
+     * @param write
+     */
+    private void writeSynchronously(PendingWrite write) {
+        synchronized (flushLock) {
+            synchronousWrites.increment();
+            if (!apply(List.of(write))) {
+                logger.error("Error al aplicar la escritura del usuario " + write.id() + " con la cola de escritura diferida llena");
+            }
+        }
+    }
+
+    /**
+     * Aplica todas las escrituras pendientes en una transacción. Si falla, se aplican una a una para aislar las que
+     * fallan; esas vuelven a la cola salvo que mientras tanto haya llegado otra más reciente del mismo id, o se
+     * descartan si ya han agotado los intentos.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<PendingWrite> batch;
+            synchronized (pending) {
+                if (pending.isEmpty()) return;
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+
+            long start = System.nanoTime();
+            try {
+                if (apply(batch)) {
+                    flushes.increment();
+                    flushedWrites.add(batch.size());
+                    return;
+                }
+                failedFlushes.increment();
+                logger.error("Error al vaciar la cola de escritura diferida, se aplican las " + batch.size() + " escrituras una a una");
+                for (PendingWrite write : batch) {
+                    if (apply(List.of(write))) flushedWrites.increment();
+                    else retryLater(write.failed());
+                }
+            }
+            finally {
+                long elapsed = System.nanoTime() - start;
+                lastFlushNanos.set(elapsed);
+                totalFlushNanos.add(elapsed);
+            }
+        }
+    }
+
+    /**
+     * Aplica un grupo de escrituras en una transacción.
+     * @param writes
+     * @return true si se han aplicado, false si ha fallado
+     */
+    private boolean apply(List<PendingWrite> writes) {
+        List<User> upserts = writes.stream().filter(w -> !w.isDelete()).map(PendingWrite::user).toList();
+        List<Long> deletes = writes.stream().filter(PendingWrite::isDelete).map(PendingWrite::id).toList();
+        try {
+            repository.applyWrites(upserts, deletes).blockingGet();
+            return true;
+        }
+        catch (Exception e) {
+            logger.debug("Error al aplicar " + writes.size() + " escrituras diferidas: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Devuelve a la cola una escritura que ha fallado, o la descarta si ya ha agotado los intentos.
+     * @param write
+     */
+    private void retryLater(PendingWrite write) {
+        if (write.attempts() >= maxAttempts) {
+            deadLettered.increment();
+            logger.error("Se descarta la escritura diferida del usuario " + write.id() + " tras " + write.attempts()
+                    + " intentos fallidos: " + (write.isDelete() ? "borrado" : write.user()));
+            return;
+        }
+        synchronized (pending) {
+            pending.putIfAbsent(write.id(), write);
+        }
+    }
+
+    /**
+     * Devuelve las métricas actuales de la cola.
+     * @return Profundidad de la cola, escrituras fusionadas y latencia de los vaciados
+     */
+    public WriteBehindMetrics getMetrics() {
+        int depth;
+        synchronized (pending) {
+            depth = pending.size();
+        }
+        long attempts = flushes.sum() + failedFlushes.sum();
+        double averageFlush = attempts == 0 ? 0 : nanosToMillis(totalFlushNanos.sum()) / attempts;
+        return new WriteBehindMetrics(
+                depth,
+                enqueued.sum(),
+                coalesced.sum(),
+                synchronousWrites.sum(),
+                deadLettered.sum(),
+                flushes.sum(),
+                failedFlushes.sum(),
+                flushedWrites.sum(),
+                nanosToMillis(lastFlushNanos.get()),
+                averageFlush
+        );
+    }
+
+    /**
+     * Detiene el vaciado periódico y aplica lo que quede pendiente.
+     */
+    @Override
+    public void close() {
+        flushTimer.dispose();
+        flush();
+    }
+
+    private static double nanosToMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -14,12 +14,32 @@ public interface UsersRepository {
      */
     Single<List<User>> getAll();
 
+    /**
+     * Método que devuelve una página de usuarios ordenados por id, empezando después del id indicado.
+     * @param afterId El id del último usuario de la página anterior
+     * @param limit Número máximo de usuarios de la página
+     * @return La lista de usuarios de la página.
+     */
+    Single<List<User>> getPage(Long afterId, int limit);
+
     /**
      * Método que devuelve un usuario o null en caso de no encontrarlo en base a un ID.
      * @return Optional del usuairo
      */
     Maybe<User> getById(Long id);
 
+    /**
+     * Método que devuelve un usuario o vacío en caso de no encontrarlo en base a su username.
+     * @return Optional del usuario
+     */
+    Maybe<User> getByUsername(String username);
+
+    /**
+     * Método que devuelve un usuario o vacío en caso de no encontrarlo en base a su email.
+     * @return Optional del usuario
+     */
+    Maybe<User> getByEmail(String email);
+
     /**
      * Método que guarda un usuario en el repositorio.
      * @return El usuario guardado
@@ -0,0 +1,24 @@
+package org.example.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Instantánea de las métricas de la cola de escritura diferida.
+ * Campos: escrituras pendientes, recibidas, fusionadas con una anterior del mismo id, aplicadas de forma sincrona
+ * con la cola llena, descartadas tras agotar los intentos, vaciados y su latencia.
+ */
+@Data
+@AllArgsConstructor
+public final class WriteBehindMetrics {
+    private final int queueDepth;
+    private final long enqueued;
+    private final long coalesced;
+    private final long synchronousWrites;
+    private final long deadLettered;
+    private final long flushes;
+    private final long failedFlushes;
+    private final long flushedWrites;
+    private final double lastFlushMillis;
+    private final double averageFlushMillis;
+}
@@ -0,0 +1,196 @@
+package org.example.resilience;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
+import org.example.config.Config;
+import org.example.exceptions.UserException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Límite adaptativo de llamadas en vuelo a un servicio externo con AIMD (subida aditiva, bajada multiplicativa).
+ * Cada llamada que responde con una latencia cercana a la mínima observada sube el límite un poco; cuando el servicio
+ * da señales de sobrecarga (429, 503, errores o una latencia muy por encima de la mínima) el límite se multiplica
+ * por el factor de bajada. Así el límite se acerca solo a la capacidad real del servicio.
+ * Las llamadas que no caben esperan en una cola acotada sin ocupar ningún hilo, y si la cola está llena se rechazan.
+ */
+public class AdaptiveConcurrencyLimiter {
+    // Cada cuantas muestras se vuelve a medir la latencia minima, para seguir los cambios del servicio
+    private static final int BASELINE_RESET_SAMPLES = 1000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final int maxQueued;
+
+    private double limit;
+    private int inFlight;
+    private long baselineNanos = Long.MAX_VALUE;
+    private int samples;
+    private final Deque<Runnable> waiting = new ArrayDeque<>();
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder drops = new LongAdder();
+    private final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    public AdaptiveConcurrencyLimiter() {
+        this(Config.getInstance().getLimiterInitialLimit(),
+                Config.getInstance().getLimiterMinLimit(),
+                Config.getInstance().getLimiterMaxLimit(),
+                Config.getInstance().getLimiterBackoffRatio(),
+                Config.getInstance().getLimiterLatencyTolerance(),
+                Config.getInstance().getLimiterQueueSize());
+    }
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+                                      double latencyTolerance, int maxQueued) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Ejecuta la llamada cuando haya hueco en el límite. Si no lo hay espera en la cola, y si la cola está llena
+     * se devuelve un RejectedException. Al terminar, su resultado y su latencia ajustan el límite.
+     * @param call Llamada al servicio
+     * @param isOverload Indica si un resultado correcto es una señal de sobrecarga (por ejemplo un 429 o un 503)
+     * @return La llamada limitada
+     */
+    public <T> Single<T> execute(Single<T> call, Predicate<T> isOverload) {
+        return Single.create(emitter -> {
+            AtomicBoolean finished = new AtomicBoolean();
+            Runnable start = () -> {
+                long startNanos = System.nanoTime();
+                Disposable subscription = call.subscribe(
+                        result -> {
+                            if (finished.compareAndSet(false, true)) release(startNanos, isOverload.test(result) ? Outcome.DROP : Outcome.SUCCESS);
+                            emitter.onSuccess(result);
+                        },
+                        error -> {
+                            if (finished.compareAndSet(false, true)) {
+                                // Un rechazo local no dice nada de la carga del servicio
+                                release(startNanos, error instanceof UserException.RejectedException ? Outcome.IGNORE : Outcome.DROP);
+                            }
+                            emitter.onError(error);
+                        });
+                emitter.setCancellable(() -> {
+                    subscription.dispose();
+                    if (finished.compareAndSet(false, true)) release(startNanos, Outcome.IGNORE);
+                });
+            };
+
+            boolean startNow = false;
+            boolean rejectNow = false;
+            synchronized (this) {
+                if (inFlight < (int) limit) {
+                    inFlight++;
+                    startNow = true;
+                }
+                else if (waiting.size() >= maxQueued) {
+                    rejected.increment();
+                    rejectNow = true;
+                }
+                else {
+                    // Si se cancela mientras espera, sale de la cola sin haber llamado al servicio.
+                    // Se registra antes de encolar para que no pise la cancelacion de la llamada ya arrancada.
+                    emitter.setCancellable(() -> {
+                        synchronized (this) {
+                            waiting.remove(start);
+                        }
+                    });
+                    waiting.add(start);
+                }
+            }
+            if (startNow) {
+                start.run();
+            }
+            else if (rejectNow) {
+                emitter.onError(new UserException.RejectedException("Limite de concurrencia de la API alcanzado"));
+            }
+        });
+    }
+
+    private enum Outcome { SUCCESS, DROP, IGNORE }
+
+    private void release(long startNanos, Outcome outcome) {
+        long latency = System.nanoTime() - startNanos;
+        List<Runnable> toStart = new ArrayList<>();
+        synchronized (this) {
+            // Solo se sube si el limite se estaba usando, si no creceria sin medida en los momentos tranquilos
+            boolean limitInUse = inFlight >= limit / 2;
+            inFlight--;
+            if (outcome == Outcome.DROP) {
+                decrease();
+            }
+            else if (outcome == Outcome.SUCCESS) {
+                if (++samples >= BASELINE_RESET_SAMPLES) {
+                    baselineNanos = latency;
+                    samples = 0;
+                }
+                baselineNanos = Math.min(baselineNanos, latency);
+                if (latency > baselineNanos * latencyTolerance) decrease();
+                else if (limitInUse) limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            while (inFlight < (int) limit && !waiting.isEmpty()) {
+                inFlight++;
+                toStart.add(waiting.poll());
+            }
+        }
+        // Las llamadas en espera se arrancan fuera del bloqueo
+        toStart.forEach(Runnable::run);
+    }
+
+    private void decrease() {
+        drops.increment();
+        double previous = limit;
+        limit = Math.max(minLimit, limit * backoffRatio);
+        if ((int) previous != (int) limit) logger.debug("Limite de concurrencia de la API reducido a " + (int) limit);
+    }
+
+    /**
+     * Límite actual de llamadas en vuelo.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Número de llamadas en vuelo.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Número de llamadas esperando a que haya hueco.
+     */
+    public synchronized int getQueued() {
+        return waiting.size();
+    }
+
+    /**
+     * Número de llamadas rechazadas por estar la cola llena.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Número de veces que se ha reducido el límite por sobrecarga del servicio.
+     */
+    public long getDrops() {
+        return drops.sum();
+    }
+}
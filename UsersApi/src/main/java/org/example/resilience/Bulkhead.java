@@ -0,0 +1,58 @@
+package org.example.resilience;
+
+import io.reactivex.rxjava3.core.Single;
+import org.example.exceptions.UserException;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compartimento estanco para un tipo de llamada: limita cuántas puede haber a la vez (en vuelo o esperando)
+ * y rechaza al momento las que no caben, de modo que un tipo de llamada no puede ocupar la capacidad de los demás.
+ */
+public class Bulkhead {
+    private final String name;
+    private final int maxConcurrent;
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    public Bulkhead(String name, int maxConcurrent) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * Ejecuta la llamada si queda hueco en el compartimento o devuelve un RejectedException si está lleno.
+     * El hueco se libera cuando la llamada termina o se cancela.
+     * @param call Llamada al servicio, no se suscribe hasta que haya hueco
+     * @return La llamada limitada
+     */
+    public <T> Single<T> execute(Single<T> call) {
+        return Single.defer(() -> {
+            if (inUse.incrementAndGet() > maxConcurrent) {
+                inUse.decrementAndGet();
+                rejected.increment();
+                return Single.error(new UserException.RejectedException("Compartimento " + name + " lleno, no se llama a la API"));
+            }
+            AtomicBoolean released = new AtomicBoolean();
+            return call.doFinally(() -> {
+                if (released.compareAndSet(false, true)) inUse.decrementAndGet();
+            });
+        });
+    }
+
+    /**
+     * Número de llamadas en vuelo o esperando dentro del compartimento.
+     */
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    /**
+     * Número de llamadas rechazadas por estar lleno.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
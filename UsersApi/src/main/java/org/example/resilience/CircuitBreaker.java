@@ -0,0 +1,169 @@
+package org.example.resilience;
+
+import io.reactivex.rxjava3.core.Single;
+import org.example.config.Config;
+import org.example.exceptions.UserException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Circuit breaker para las llamadas a un servicio externo. Mientras está cerrado deja pasar todas las llamadas y
+ * guarda el resultado de las últimas en una ventana; si la proporción de fallos supera el umbral se abre y las
+ * llamadas fallan al instante sin llegar al servicio. Pasado el tiempo de apertura deja pasar una sola llamada de
+ * prueba (semiabierto): si sale bien se cierra y si falla se vuelve a abrir.
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDurationNanos;
+
+    // Resultados de las ultimas llamadas en un buffer circular, true si la llamada fallo
+    private final boolean[] outcomes;
+    private int recorded;
+    private int next;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probeInFlight;
+    private long opens;
+    private final LongAdder rejected = new LongAdder();
+
+    private final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public CircuitBreaker(String name) {
+        this(name,
+                Config.getInstance().getCircuitWindowSize(),
+                Config.getInstance().getCircuitMinimumCalls(),
+                Config.getInstance().getCircuitFailureRateThreshold(),
+                Config.getInstance().getCircuitOpenDurationMs());
+    }
+
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold, long openDurationMs) {
+        this.name = name;
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMs);
+        this.outcomes = new boolean[windowSize];
+    }
+
+    /**
+     * Protege una llamada con el circuito. Si está abierto la llamada no se hace y se devuelve un RejectedException.
+     * Los errores de la llamada cuentan como fallo, igual que los resultados que cumplan isFailure
+     * (por ejemplo las respuestas 5xx); el resto cuentan como éxito aunque no sean lo que se buscaba, como un 404.
+     * Las llamadas rechazadas en local (RejectedException) no llegan al servicio y no cuentan.
+     * @param call Llamada al servicio, no se suscribe si el circuito está abierto
+     * @param isFailure Indica si un resultado correcto de la llamada debe contar como fallo
+     * @return La llamada protegida
+     */
+    public <T> Single<T> protect(Single<T> call, Predicate<T> isFailure) {
+        return Single.defer(() -> {
+            if (!tryAcquire()) {
+                rejected.increment();
+                return Single.error(new UserException.RejectedException("Circuito " + name + " abierto, no se llama a la API"));
+            }
+            // Cada llamada se cuenta una sola vez, termine como termine
+            AtomicBoolean done = new AtomicBoolean();
+            return call
+                    .doOnSuccess(result -> {
+                        if (done.compareAndSet(false, true)) record(isFailure.test(result));
+                    })
+                    .doOnError(e -> {
+                        if (!done.compareAndSet(false, true)) return;
+                        if (e instanceof UserException.RejectedException) cancelled();
+                        else record(true);
+                    })
+                    .doOnDispose(() -> {
+                        if (done.compareAndSet(false, true)) cancelled();
+                    });
+        });
+    }
+
+    private synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openDurationNanos) return false;
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            default:
+                // Semiabierto: solo una llamada de prueba a la vez
+                if (probeInFlight) return false;
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    private synchronized void record(boolean failed) {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+            if (failed) open();
+            else close();
+            return;
+        }
+        // Las llamadas que empezaron antes de abrir el circuito ya no cuentan
+        if (state == State.OPEN) return;
+
+        if (recorded == windowSize) {
+            if (outcomes[next]) failures--;
+        }
+        else {
+            recorded++;
+        }
+        outcomes[next] = failed;
+        if (failed) failures++;
+        next = (next + 1) % windowSize;
+
+        if (recorded >= minimumCalls && failures >= failureRateThreshold * recorded) open();
+    }
+
+    private synchronized void cancelled() {
+        // Una llamada de prueba cancelada o rechazada no dice nada del servicio, se deja pasar otra
+        if (state == State.HALF_OPEN) probeInFlight = false;
+    }
+
+    private void open() {
+        logger.warn("Circuito " + name + " abierto, las llamadas fallaran sin llegar a la API durante "
+                + TimeUnit.NANOSECONDS.toMillis(openDurationNanos) + " ms");
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        opens++;
+    }
+
+    private void close() {
+        logger.info("Circuito " + name + " cerrado, la API vuelve a responder");
+        state = State.CLOSED;
+        recorded = 0;
+        next = 0;
+        failures = 0;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Número de veces que se ha abierto el circuito.
+     */
+    public synchronized long getOpens() {
+        return opens;
+    }
+
+    /**
+     * Número de llamadas rechazadas sin llegar al servicio por estar el circuito abierto.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,132 @@
+package org.example.resilience;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import org.example.config.Config;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Peticiones duplicadas (hedging) para llamadas idempotentes: si la primera llamada no ha respondido cuando
+ * se alcanza el percentil configurado de las latencias recientes, se lanza una segunda igual y se usa la
+ * respuesta que llegue antes, cancelando la otra. Así la cola de latencia depende de la más rápida de dos
+ * llamadas en lugar de la de una sola, a cambio de unas pocas peticiones de más.
+ */
+public class HedgingPolicy {
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+    private final double maxHedgeRatio;
+    private final Scheduler scheduler;
+
+    // Ultimas latencias en milisegundos en un buffer circular
+    private final long[] latencies;
+    private int recorded;
+    private int next;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    public HedgingPolicy() {
+        this(Config.getInstance().isHedgeEnabled(),
+                Config.getInstance().getHedgePercentile(),
+                Config.getInstance().getHedgeMinDelayMs(),
+                Config.getInstance().getHedgeMaxDelayMs(),
+                Config.getInstance().getHedgeWindowSize(),
+                Config.getInstance().getHedgeMaxRatio(),
+                Schedulers.computation());
+    }
+
+    public HedgingPolicy(boolean enabled, double percentile, long minDelayMillis, long maxDelayMillis,
+                         int windowSize, double maxHedgeRatio, Scheduler scheduler) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelayMillis = minDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxHedgeRatio = maxHedgeRatio;
+        this.scheduler = scheduler;
+        this.latencies = new long[windowSize];
+    }
+
+    /**
+     * Ejecuta la llamada y, si tarda más que el percentil de latencia, una segunda copia.
+     * Solo se debe usar con llamadas idempotentes, porque puede que ambas lleguen al servidor.
+     * Un error de la copia no se propaga: se sigue esperando a la primera llamada.
+     * @param attempt Crea una llamada nueva cada vez que se invoca
+     * @return La respuesta que llegue antes
+     */
+    public <T> Single<T> execute(Supplier<Single<T>> attempt) {
+        return Single.defer(() -> {
+            calls.increment();
+            long start = System.nanoTime();
+            Single<T> primary = attempt.get().doOnSuccess(result -> recordLatency(start));
+            if (!enabled) {
+                return primary;
+            }
+            Single<T> hedge = Single.timer(currentDelayMillis(), TimeUnit.MILLISECONDS, scheduler)
+                    .flatMap(tick -> {
+                        // Si ya se han duplicado demasiadas llamadas, la API va lenta en general y duplicar no ayuda
+                        if (hedges.sum() >= maxHedgeRatio * calls.sum()) return Single.<T>never();
+                        hedges.increment();
+                        return attempt.get()
+                                .doOnSuccess(result -> {
+                                    hedgeWins.increment();
+                                    recordLatency(start);
+                                })
+                                .onErrorResumeNext(e -> Single.never());
+                    });
+            return Single.ambArray(primary, hedge);
+        });
+    }
+
+    /**
+     * Calcula la espera antes de lanzar la copia: el percentil de las latencias recientes, acotado entre el mínimo
+     * y el máximo. Mientras no hay suficientes latencias medidas se usa el máximo.
+     * @return Milisegundos de espera
+     */
+    public synchronized long currentDelayMillis() {
+        // Hacen falta suficientes muestras para que el percentil tenga sentido
+        if (recorded < Math.min(latencies.length, Math.ceil(1 / (1 - percentile)))) return maxDelayMillis;
+        long[] sorted = Arrays.copyOf(latencies, recorded);
+        Arrays.sort(sorted);
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return Math.max(minDelayMillis, Math.min(maxDelayMillis, sorted[Math.max(index, 0)]));
+    }
+
+    /**
+     * Guarda la latencia vista por quien llama, desde que empezó la primera llamada hasta la respuesta.
+     * Cuando gana la copia es una cota inferior de lo que habría tardado la primera.
+     */
+    private synchronized void recordLatency(long startNanos) {
+        latencies[next] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        next = (next + 1) % latencies.length;
+        if (recorded < latencies.length) recorded++;
+    }
+
+    /**
+     * Número de llamadas ejecutadas con la política.
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * Número de copias lanzadas.
+     */
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    /**
+     * Número de veces que la copia respondió antes que la primera llamada.
+     */
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+}
@@ -0,0 +1,35 @@
+package org.example.resilience;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Instantánea de las métricas de resiliencia de las llamadas a la API.
+ * Campos: estado del circuito, veces que se ha abierto y llamadas rechazadas, y para las peticiones duplicadas
+ * las llamadas, copias lanzadas, copias que respondieron antes y la espera actual antes de lanzar una copia.
+ * Del límite de concurrencia: límite actual, llamadas en vuelo y esperando, rechazos y reducciones por sobrecarga,
+ * y de los compartimentos de lectura y escritura las llamadas que los ocupan y las rechazadas.
+ * De los reintentos: reintentos hechos, llamadas que agotaron intentos o presupuesto y reintentos disponibles.
+ */
+@Data
+@AllArgsConstructor
+public final class ResilienceMetrics {
+    private final CircuitBreaker.State circuitState;
+    private final long circuitOpens;
+    private final long rejectedCalls;
+    private final long hedgedCalls;
+    private final long hedgesSent;
+    private final long hedgeWins;
+    private final long hedgeDelayMillis;
+    private final int concurrencyLimit;
+    private final int inFlight;
+    private final int queued;
+    private final long limiterRejected;
+    private final long limiterDrops;
+    private final int readBulkheadInUse;
+    private final int writeBulkheadInUse;
+    private final long bulkheadRejected;
+    private final long retries;
+    private final long retriesExhausted;
+    private final int retryBudgetAvailable;
+}
@@ -0,0 +1,42 @@
+package org.example.resilience;
+
+/**
+ * Presupuesto global de reintentos con un cubo de fichas: cada reintento gasta una ficha y cada llamada correcta
+ * devuelve una fracción de ficha. Cuando la API falla mucho las fichas se agotan y se deja de reintentar, de modo
+ * que los reintentos nunca multiplican la carga de una API caída.
+ */
+public class RetryBudget {
+    private final double maxTokens;
+    private final double tokenRatio;
+    private double tokens;
+
+    public RetryBudget(int maxTokens, double tokenRatio) {
+        this.maxTokens = maxTokens;
+        this.tokenRatio = tokenRatio;
+        this.tokens = maxTokens;
+    }
+
+    /**
+     * Gasta una ficha si queda alguna.
+     * @return true si se puede reintentar
+     */
+    public synchronized boolean tryAcquire() {
+        if (tokens < 1) return false;
+        tokens--;
+        return true;
+    }
+
+    /**
+     * Devuelve una fracción de ficha por una llamada correcta.
+     */
+    public synchronized void onSuccess() {
+        tokens = Math.min(maxTokens, tokens + tokenRatio);
+    }
+
+    /**
+     * Número de reintentos que se pueden hacer ahora mismo.
+     */
+    public synchronized int getAvailable() {
+        return (int) tokens;
+    }
+}
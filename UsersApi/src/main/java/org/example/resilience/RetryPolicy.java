@@ -0,0 +1,138 @@
+package org.example.resilience;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import org.example.config.Config;
+import org.example.exceptions.UserException;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Reintentos de las llamadas a un servicio externo con espera exponencial y aleatoria ("full jitter"): antes del
+ * intento n se espera un tiempo al azar entre 0 y base * 2^(n-1), sin pasar del máximo, para que los clientes que
+ * fallaron a la vez no reintenten a la vez. Solo se reintentan los métodos idempotentes y los fallos transitorios
+ * (errores de red y respuestas que el llamador marca como transitorias), y cada reintento gasta del presupuesto global.
+ */
+public class RetryPolicy {
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Set<String> idempotentMethods;
+    private final RetryBudget budget;
+    private final Scheduler scheduler;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    /**
+     * Resultado de un intento: la respuesta o el error.
+     */
+    private record Attempt<T>(T result, Throwable error) {
+        Single<T> toSingle() {
+            return error == null ? Single.just(result) : Single.error(error);
+        }
+    }
+
+    public RetryPolicy() {
+        this(Config.getInstance().getRetryMaxAttempts(),
+                Config.getInstance().getRetryBaseDelayMs(),
+                Config.getInstance().getRetryMaxDelayMs(),
+                Config.getInstance().getRetryIdempotentMethods(),
+                new RetryBudget(Config.getInstance().getRetryBudgetMaxTokens(), Config.getInstance().getRetryBudgetTokenRatio()),
+                Schedulers.computation());
+    }
+
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, Set<String> idempotentMethods,
+                       RetryBudget budget, Scheduler scheduler) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.idempotentMethods = idempotentMethods;
+        this.budget = budget;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Ejecuta la llamada y la repite mientras falle de forma transitoria, queden intentos y quede presupuesto.
+     * Si se agotan, se devuelve el último resultado tal cual (la respuesta transitoria o el error). Si un reintento
+     * se rechaza en local (circuito abierto o sin capacidad) se deja de reintentar y se devuelve el resultado real
+     * del intento anterior, para que el llamador vea el fallo del servicio y no el rechazo.
+     * @param call Llamada al servicio, se vuelve a suscribir en cada intento
+     * @param method Método HTTP de la llamada, decide si se puede reintentar
+     * @param isTransient Indica si una respuesta correcta es un fallo transitorio (por ejemplo un 503)
+     * @return La llamada con reintentos
+     */
+    public <T> Single<T> execute(Single<T> call, String method, Predicate<T> isTransient) {
+        if (maxAttempts <= 1 || !idempotentMethods.contains(method)) return call;
+        return attempt(call, isTransient, 1, null);
+    }
+
+    /**
+     * @param previous Resultado del intento anterior, null en el primero
+     */
+    private <T> Single<T> attempt(Single<T> call, Predicate<T> isTransient, int attempt, Attempt<T> previous) {
+        return call.map(result -> new Attempt<>(result, null))
+                .onErrorReturn(error -> new Attempt<>(null, error))
+                .flatMap(outcome -> {
+                    if (previous != null && outcome.error() instanceof UserException.RejectedException) {
+                        exhausted.increment();
+                        return previous.toSingle();
+                    }
+                    boolean transientFailure = outcome.error() != null ? isTransientError(outcome.error()) : isTransient.test(outcome.result());
+                    if (!transientFailure) {
+                        if (outcome.error() == null) budget.onSuccess();
+                        return outcome.toSingle();
+                    }
+                    if (attempt >= maxAttempts || !budget.tryAcquire()) {
+                        exhausted.increment();
+                        return outcome.toSingle();
+                    }
+                    retries.increment();
+                    return Single.timer(backoffMillis(attempt), TimeUnit.MILLISECONDS, scheduler)
+                            .flatMap(tick -> attempt(call, isTransient, attempt + 1, outcome));
+                });
+    }
+
+    /**
+     * Solo los errores de red (conexión rechazada, timeouts...) son transitorios. Los rechazos locales
+     * (circuito abierto, sin capacidad) no se reintentan porque reintentar solo añadiría carga.
+     */
+    private static boolean isTransientError(Throwable error) {
+        return error instanceof IOException;
+    }
+
+    /**
+     * Espera aleatoria entre 0 y base * 2^(intento-1), sin pasar del máximo.
+     */
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 30));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Número de reintentos hechos.
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * Número de llamadas que siguieron fallando al agotar los intentos o el presupuesto.
+     */
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+
+    /**
+     * Número de reintentos que permite ahora mismo el presupuesto.
+     */
+    public int getBudgetAvailable() {
+        return budget.getAvailable();
+    }
+}
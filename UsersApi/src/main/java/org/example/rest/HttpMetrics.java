@@ -0,0 +1,27 @@
+package org.example.rest;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Instantánea de las métricas de las llamadas HTTP a la API.
+ * Campos: llamadas terminadas y fallidas, llamadas que reutilizaron una conexión abierta y tiempos medios
+ * de resolución DNS, conexión, negociación TLS y hasta el primer byte de la respuesta. También los aciertos de la
+ * caché HTTP (sin red o revalidados con un 304), los fallos y las respuestas caducadas servidas sin conexión.
+ */
+@Data
+@AllArgsConstructor
+public final class HttpMetrics {
+    private final long calls;
+    private final long failedCalls;
+    private final long reusedConnections;
+    private final double averageDnsMillis;
+    private final double averageConnectMillis;
+    private final double averageTlsMillis;
+    private final double averageTimeToFirstByteMillis;
+    private final double maxTimeToFirstByteMillis;
+    private final long cacheHits;
+    private final long cacheConditionalHits;
+    private final long cacheMisses;
+    private final long offlineCacheHits;
+}
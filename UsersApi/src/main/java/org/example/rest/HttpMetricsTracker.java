@@ -0,0 +1,205 @@
+package org.example.rest;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recoge los tiempos de cada llamada HTTP: OkHttp crea un listener por llamada que mide la resolución DNS,
+ * la conexión, la negociación TLS y el tiempo hasta el primer byte, y los acumula aquí.
+ * Las fases que no ocurren (por ejemplo al reutilizar una conexión) no cuentan para su media.
+ * También cuenta cómo ha respondido la caché HTTP a cada llamada.
+ */
+public class HttpMetricsTracker implements EventListener.Factory {
+    private final Logger logger = LoggerFactory.getLogger(HttpMetricsTracker.class);
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failedCalls = new LongAdder();
+    private final LongAdder reusedConnections = new LongAdder();
+    private final Phase dns = new Phase();
+    private final Phase connect = new Phase();
+    private final Phase tls = new Phase();
+    private final Phase timeToFirstByte = new Phase();
+    private final AtomicLong maxTimeToFirstByteNanos = new AtomicLong();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheConditionalHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder offlineCacheHits = new LongAdder();
+
+    @Override
+    public EventListener create(Call call) {
+        return new CallTimings();
+    }
+
+    /**
+     * Devuelve los tiempos acumulados de las llamadas.
+     * @return Métricas HTTP
+     */
+    public HttpMetrics snapshot() {
+        return new HttpMetrics(
+                calls.sum(),
+                failedCalls.sum(),
+                reusedConnections.sum(),
+                dns.averageMillis(),
+                connect.averageMillis(),
+                tls.averageMillis(),
+                timeToFirstByte.averageMillis(),
+                nanosToMillis(maxTimeToFirstByteNanos.get()),
+                cacheHits.sum(),
+                cacheConditionalHits.sum(),
+                cacheMisses.sum(),
+                offlineCacheHits.sum()
+        );
+    }
+
+    /**
+     * Cuenta una lectura servida desde la caché porque la API no respondía.
+     */
+    public void recordOfflineCacheHit() {
+        offlineCacheHits.increment();
+    }
+
+    private static double nanosToMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Suma y número de mediciones de una fase de la llamada.
+     */
+    private static final class Phase {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        void record(long elapsedNanos) {
+            count.increment();
+            nanos.add(elapsedNanos);
+        }
+
+        double averageMillis() {
+            long total = count.sum();
+            return total == 0 ? 0 : nanosToMillis(nanos.sum()) / total;
+        }
+    }
+
+    /**
+     * Listener de una sola llamada. OkHttp invoca sus eventos uno detras de otro, nunca a la vez.
+     */
+    private final class CallTimings extends EventListener {
+        private long callStart;
+        private long dnsStart;
+        private long connectStart;
+        private long tlsStart;
+        private boolean newConnection;
+        private long dnsNanos = -1;
+        private long connectNanos = -1;
+        private long tlsNanos = -1;
+        private long firstByteNanos = -1;
+
+        @Override
+        public void callStart(Call call) {
+            callStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            dnsNanos = System.nanoTime() - dnsStart;
+            dns.record(dnsNanos);
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            newConnection = true;
+            connectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            tlsStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            tlsNanos = System.nanoTime() - tlsStart;
+            tls.record(tlsNanos);
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            // Incluye la negociacion TLS, igual que la ve quien hace la llamada
+            connectNanos = System.nanoTime() - connectStart;
+            connect.record(connectNanos);
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            if (!newConnection) reusedConnections.increment();
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            // Solo el primer byte de la primera respuesta, las redirecciones no se vuelven a medir
+            if (firstByteNanos >= 0) return;
+            firstByteNanos = System.nanoTime() - callStart;
+            timeToFirstByte.record(firstByteNanos);
+            maxTimeToFirstByteNanos.accumulateAndGet(firstByteNanos, Math::max);
+        }
+
+        @Override
+        public void cacheHit(Call call, Response response) {
+            cacheHits.increment();
+        }
+
+        @Override
+        public void cacheConditionalHit(Call call, Response cachedResponse) {
+            cacheConditionalHits.increment();
+        }
+
+        @Override
+        public void cacheMiss(Call call) {
+            cacheMisses.increment();
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            calls.increment();
+            log(call, "OK");
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            calls.increment();
+            failedCalls.increment();
+            log(call, "fallida (" + ioe.getMessage() + ")");
+        }
+
+        private void log(Call call, String result) {
+            if (!logger.isDebugEnabled()) return;
+            logger.debug(call.request().method() + " " + call.request().url() + " " + result
+                    + " dns=" + format(dnsNanos) + " connect=" + format(connectNanos)
+                    + " tls=" + format(tlsNanos) + " ttfb=" + format(firstByteNanos)
+                    + " total=" + format(System.nanoTime() - callStart));
+        }
+
+        private String format(long nanos) {
+            return nanos < 0 ? "-" : String.format("%.1fms", nanosToMillis(nanos));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.rest;
+
+import okhttp3.CacheControl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Si una lectura (GET) falla porque no se puede contactar con la API, la repite contra la caché HTTP aceptando
+ * entradas caducadas, de modo que sin conexión se sigue respondiendo con la última copia conocida.
+ * Si la caché tampoco la tiene (OkHttp responde 504) se devuelve el error de red original.
+ */
+public class OfflineCacheInterceptor implements Interceptor {
+    private final HttpMetricsTracker metrics;
+    private final Logger logger = LoggerFactory.getLogger(OfflineCacheInterceptor.class);
+
+    public OfflineCacheInterceptor(HttpMetricsTracker metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        try {
+            return chain.proceed(request);
+        } catch (IOException e) {
+            if (!"GET".equals(request.method())) throw e;
+            Response cached = chain.proceed(request.newBuilder().cacheControl(CacheControl.FORCE_CACHE).build());
+            if (cached.code() == 504) {
+                cached.close();
+                throw e;
+            }
+            logger.warn("API no disponible (" + e.getMessage() + "), se sirve desde la cache: " + request.url());
+            metrics.recordOfflineCacheHit();
+            return cached;
+        }
+    }
+}
@@ -1,25 +1,110 @@
 package org.example.rest;
 
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.example.config.AppObjectMapper;
 import org.example.config.Config;
 import retrofit2.Retrofit;
 import retrofit2.adapter.rxjava3.RxJava3CallAdapterFactory;
 import retrofit2.converter.jackson.JacksonConverterFactory;
 
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Clase que sirve de cliente para realizar peticiones HTTP a un servicio REST.
  */
 // Clase que hace las peticiones a la API con métodos HTTP.
 public class RetrofitClient {
     private static Retrofit retrofit = null;
+    private static final HttpMetricsTracker httpMetrics = new HttpMetricsTracker();
+    // OkHttp solo admite una caché por directorio, todos los clientes comparten la misma
+    private static Cache httpCache = null;
 
     public synchronized static Retrofit getClient() {
         if (retrofit == null) {
-            retrofit = new Retrofit.Builder()
-                    .baseUrl(Config.getInstance().getApiUrl())
-                    .addConverterFactory(JacksonConverterFactory.create())
-                    .addCallAdapterFactory(RxJava3CallAdapterFactory.create())
-                    .build();
+            retrofit = create(Config.getInstance().getApiUrl());
         }
         return retrofit;
     }
+
+    /**
+     * Crea un cliente nuevo contra la URL indicada con la misma configuración HTTP que el compartido.
+     * Sirve para apuntar a otra API (por ejemplo un servidor local en las pruebas de carga).
+     * @param baseUrl URL base de la API, terminada en "/"
+     * @return Cliente Retrofit
+     */
+    public static Retrofit create(String baseUrl) {
+        Config config = Config.getInstance();
+        return create(baseUrl, config.isHttpCacheEnabled() ? getHttpCache(config) : null, httpMetrics);
+    }
+
+    /**
+     * Crea un cliente nuevo contra la URL indicada con una caché HTTP y unas métricas propias en lugar de las
+     * compartidas, por ejemplo para probar la caché en un directorio temporal.
+     * @param baseUrl URL base de la API, terminada en "/"
+     * @param cache Caché HTTP en disco, null para no usar caché
+     * @param metrics Métricas donde se acumulan las llamadas de este cliente
+     * @return Cliente Retrofit
+     */
+    public static Retrofit create(String baseUrl, Cache cache, HttpMetricsTracker metrics) {
+        return new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(createHttpClient(Config.getInstance(), cache, metrics))
+                // Mismo ObjectMapper que el resto de la aplicacion, con sus (de)serializadores ya construidos
+                .addConverterFactory(JacksonConverterFactory.create(AppObjectMapper.get()))
+                // Llamadas asincronas: la espera de la respuesta no ocupa ningun hilo
+                .addCallAdapterFactory(RxJava3CallAdapterFactory.createAsync())
+                .build();
+    }
+
+    /**
+     * Devuelve los tiempos acumulados de las llamadas a la API.
+     * @return Métricas HTTP
+     */
+    public static HttpMetrics getHttpMetrics() {
+        return httpMetrics.snapshot();
+    }
+
+    private synchronized static Cache getHttpCache(Config config) {
+        if (httpCache == null) {
+            httpCache = new Cache(new File(config.getHttpCacheDir()), config.getHttpCacheMaxSizeBytes());
+        }
+        return httpCache;
+    }
+
+    /**
+     * Crea el cliente HTTP con el pool de conexiones, los límites de peticiones simultáneas, los timeouts y la caché
+     * en disco de la configuración.
+     * Por defecto OkHttp solo permite 5 peticiones a la vez por host, lo que limita las ráfagas de consultas a la API.
+     */
+    private static OkHttpClient createHttpClient(Config config, Cache cache, HttpMetricsTracker metrics) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(config.getHttpMaxRequests());
+        dispatcher.setMaxRequestsPerHost(config.getHttpMaxRequestsPerHost());
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(config.getHttpPoolMaxIdle(), config.getHttpPoolKeepAliveMs(), TimeUnit.MILLISECONDS))
+                .connectTimeout(config.getHttpConnectTimeoutMs(), TimeUnit.MILLISECONDS)
+                .readTimeout(config.getHttpReadTimeoutMs(), TimeUnit.MILLISECONDS)
+                .writeTimeout(config.getHttpWriteTimeoutMs(), TimeUnit.MILLISECONDS)
+                .callTimeout(config.getHttpCallTimeoutMs(), TimeUnit.MILLISECONDS)
+                .eventListenerFactory(metrics);
+        if (!config.isHttp2Enabled()) {
+            builder.protocols(List.of(Protocol.HTTP_1_1));
+        }
+        if (cache != null) {
+            // Las respuestas que la API marca como cacheables (Cache-Control/max-age) se sirven desde disco sin red
+            builder.cache(cache);
+            if (config.isHttpCacheOfflineFallback()) {
+                builder.addInterceptor(new OfflineCacheInterceptor(metrics));
+            }
+        }
+        return builder.build();
+    }
 }
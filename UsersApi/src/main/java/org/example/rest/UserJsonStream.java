@@ -0,0 +1,62 @@
+package org.example.rest;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.reactivex.rxjava3.core.Flowable;
+import okhttp3.ResponseBody;
+import org.example.config.AppObjectMapper;
+
+import java.io.IOException;
+
+/**
+ * Lee una lista JSON de usuarios de la API elemento a elemento con un JsonParser de Jackson, sin cargar el cuerpo
+ * completo ni construir la lista en memoria. Cada usuario se lee del socket solo cuando el suscriptor lo pide,
+ * por lo que la memoria usada no depende del tamaño de la respuesta.
+ */
+public class UserJsonStream {
+    private UserJsonStream() {
+    }
+
+    /**
+     * Emite los usuarios de un cuerpo con un array JSON. El cuerpo se cierra al completar, fallar o cancelar.
+     * @param body Cuerpo de la respuesta, puede ser null si la API no envia contenido
+     * @return Flowable de usuarios en el orden en que llegan
+     */
+    public static Flowable<UserApiEntity> parse(ResponseBody body) {
+        if (body == null) return Flowable.empty();
+        ObjectReader reader = AppObjectMapper.get().readerFor(UserApiEntity.class);
+        return Flowable.generate(
+                () -> open(body),
+                (parser, emitter) -> {
+                    JsonToken token = parser.nextToken();
+                    if (token == JsonToken.START_OBJECT) {
+                        emitter.onNext(reader.readValue(parser));
+                    }
+                    else if (token == JsonToken.END_ARRAY) {
+                        emitter.onComplete();
+                    }
+                    else {
+                        emitter.onError(new IOException("JSON de usuarios mal formado, token inesperado: " + token));
+                    }
+                },
+                parser -> {
+                    parser.close();
+                    body.close();
+                });
+    }
+
+    private static JsonParser open(ResponseBody body) throws IOException {
+        JsonParser parser = AppObjectMapper.get().getFactory().createParser(body.byteStream());
+        try {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Se esperaba un array JSON de usuarios");
+            }
+            return parser;
+        } catch (IOException e) {
+            parser.close();
+            body.close();
+            throw e;
+        }
+    }
+}
@@ -1,30 +1,77 @@
 package org.example.rest;
 
-import retrofit2.Call;
+import io.reactivex.rxjava3.core.Single;
+import okhttp3.ResponseBody;
+import retrofit2.Response;
 import retrofit2.http.*;
 
 import java.util.List;
 
+/**
+ * Endpoints de la API de usuarios. Cada llamada devuelve un Single con la respuesta completa, que no hace
+ * la peticion hasta que alguien se suscribe y no bloquea ningun hilo mientras espera la respuesta.
+ */
 public interface UsersApiDao {
     /**
      * Solicitud GET a la API para recuperar todos los usuarios
      */
     @GET("users")
-    Call<List<UserApiEntity>> getAll();
+    Single<Response<List<UserApiEntity>>> getAll();
+
+    /**
+     * Solicitud GET a la API para recuperar todos los usuarios sin decodificar el cuerpo.
+     * El cuerpo no se descarga entero: se lee del socket a medida que se consume (ver UserJsonStream).
+     */
+    @Streaming
+    @GET("users")
+    Single<Response<ResponseBody>> streamAll();
+
+    /**
+     * Solicitud GET condicional a la API para recuperar todos los usuarios solo si han cambiado.
+     * Si la lista no ha cambiado desde la respuesta que dio los validadores, la API responde 304 sin cuerpo.
+     * Los validadores nulos no se envian. El cuerpo se lee en streaming igual que en streamAll.
+     * @param etag ETag de la ultima respuesta
+     * @param lastModified Last-Modified de la ultima respuesta
+     */
+    @Streaming
+    @GET("users")
+    Single<Response<ResponseBody>> getAllIfModified(@Header("If-None-Match") String etag, @Header("If-Modified-Since") String lastModified);
+
+    /**
+     * Solicitud GET a la API para recuperar una página de usuarios ordenados por id
+     * @param fromId El primer id que puede incluir la página
+     * @param limit Número máximo de usuarios
+     */
+    @GET("users?_sort=id&_order=asc")
+    Single<Response<List<UserApiEntity>>> getPage(@Query("id_gte") Long fromId, @Query("_limit") int limit);
 
     /**
      * Solicitud GET a la API para obtener un usuario dado un ID
      * @param id
      */
     @GET("users/{id}")
-    Call<UserApiEntity> getById(@Path("id") Long id);
+    Single<Response<UserApiEntity>> getById(@Path("id") Long id);
+
+    /**
+     * Solicitud GET a la API para buscar usuarios por username
+     * @param username
+     */
+    @GET("users")
+    Single<Response<List<UserApiEntity>>> getByUsername(@Query("username") String username);
+
+    /**
+     * Solicitud GET a la API para buscar usuarios por email
+     * @param email
+     */
+    @GET("users")
+    Single<Response<List<UserApiEntity>>> getByEmail(@Query("email") String email);
 
     /**
      * Solicitud POST a la API para crear un usuario
      * @param user
      */
     @POST("users")
-    Call<UserApiEntity> create(@Body UserApiEntity user);
+    Single<Response<UserApiEntity>> create(@Body UserApiEntity user);
 
     /**
      * Solicitud PUT a la API para actualizar el contenido de un usuario dado un ID
@@ -32,7 +79,7 @@ public interface UsersApiDao {
      * @param user
      */
     @PUT("users/{id}")
-    Call<UserApiEntity> update(@Path("id") Long id, @Body UserApiEntity user);
+    Single<Response<UserApiEntity>> update(@Path("id") Long id, @Body UserApiEntity user);
 
     /**
      * Solicitud DELETE a la API para eliminar un usuario dado un ID
@@ -40,5 +87,5 @@ public interface UsersApiDao {
      * @return
      */
     @DELETE("users/{id}")
-    Call<UserApiEntity> delete(@Path("id") Long id);
+    Single<Response<UserApiEntity>> delete(@Path("id") Long id);
 }
@@ -1,18 +1,31 @@
 package org.example.service;
 
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Single;
 import org.example.models.User;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface UserService {
 
     Single<List<User>> getAll();
 
+    Flowable<User> streamAll();
+
+    Single<List<User>> getPage(long afterId, int limit);
+
     Maybe<User> getById(long id);
 
+    Single<Map<Long, User>> getByIds(Collection<Long> ids);
+
+    Maybe<User> getByUsername(String username);
+
+    Maybe<User> getByEmail(String email);
+
     Maybe<User> save(User user);
 
     Maybe<User> update(User user, long id);
@@ -1,31 +1,68 @@
 package org.example.service;
 
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.schedulers.Schedulers;
-import lombok.AllArgsConstructor;
+import org.example.cache.CacheMetrics;
+import org.example.cache.UserCache;
+import org.example.config.Config;
 import org.example.exceptions.UserException;
+import org.example.models.SyncResult;
 import org.example.models.User;
 import org.example.repository.UserRemoteRepositoryImpl;
 import org.example.repository.UserRepositoryImpl;
+import org.example.repository.UserWriteBehindQueue;
 import org.example.storage.UserStorageImpl;
 import org.example.validator.UserValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
-@AllArgsConstructor
 public class UserServiceImpl implements UserService {
     private final UserRepositoryImpl localRepository;
     private final UserRemoteRepositoryImpl remoteRepository;
     private final UserStorageImpl userStorage;
-    private final Cache<Long, User> userCache;
+    // Cache por id que se carga sola con la busqueda local y remota, y refresca en segundo plano los usuarios mas usados
+    private final AsyncLoadingCache<Long, User> userCache;
+    private final Cache<String, User> lookupCache;
+    // Cola de escritura diferida del repositorio local, null si las escrituras locales son sincronas
+    private final UserWriteBehindQueue writeBehindQueue;
 
     private final Logger logger = LoggerFactory.getLogger(UserServiceImpl.class);
 
+    public UserServiceImpl(UserRepositoryImpl localRepository, UserRemoteRepositoryImpl remoteRepository, UserStorageImpl userStorage) {
+        this(localRepository, remoteRepository, userStorage, UserCache.provideLookupCache(),
+                Config.getInstance().isWriteBehindEnabled() ? new UserWriteBehindQueue(localRepository) : null);
+    }
+
+    public UserServiceImpl(UserRepositoryImpl localRepository, UserRemoteRepositoryImpl remoteRepository, UserStorageImpl userStorage,
+                           Cache<String, User> lookupCache, UserWriteBehindQueue writeBehindQueue) {
+        this(localRepository, remoteRepository, userStorage, lookupCache, writeBehindQueue, Ticker.systemTicker());
+    }
+
+    public UserServiceImpl(UserRepositoryImpl localRepository, UserRemoteRepositoryImpl remoteRepository, UserStorageImpl userStorage,
+                           Cache<String, User> lookupCache, UserWriteBehindQueue writeBehindQueue, Ticker ticker) {
+        this.localRepository = localRepository;
+        this.remoteRepository = remoteRepository;
+        this.userStorage = userStorage;
+        this.lookupCache = lookupCache;
+        this.writeBehindQueue = writeBehindQueue;
+        // Si no existe, la carga termina con null y la cache no guarda nada (o quita la entrada si era una recarga)
+        this.userCache = UserCache.provideLoadingCache((id, executor) -> loadById(id).toCompletionStage(null).toCompletableFuture(), ticker);
+    }
+
     @Override
     public Single<List<User>> getAll() {
         logger.info("Obteniendo todos los usuarios");
@@ -38,36 +75,186 @@ public class UserServiceImpl implements UserService {
                     }
                     else {
                         return remoteRepository.getAll().flatMap(remoteUsers ->{
-                            if (!remoteUsers.isEmpty()) {
-                                remoteUsers.forEach(localRepository::save);
+                            if (remoteUsers.isEmpty()) {
+                                return Single.just(remoteUsers);
                             }
-                            return Single.just(remoteUsers);
+                            // Se guardan todos de una vez por lotes en lugar de un INSERT por usuario
+                            return localRepository.saveAll(remoteUsers)
+                                    .doOnError(e -> logger.error(e.getMessage()))
+                                    .onErrorReturnItem(0)
+                                    .map(saved -> remoteUsers);
                         });
                     }
-                }).subscribeOn(Schedulers.io());
+                });
+    }
+
+    @Override
+    public Flowable<User> streamAll() {
+        logger.info("Recorriendo todos los usuarios en streaming");
+        // Se leen del repositorio local con un cursor, sin cargar la tabla entera en memoria
+        return localRepository.streamAll()
+                .doOnError(e -> logger.error(e.getMessage()));
+    }
+
+    @Override
+    public Single<List<User>> getPage(long afterId, int limit) {
+        logger.info("Obteniendo pagina de usuarios despues del id: " + afterId);
+        if (limit <= 0) {
+            return Single.error(new UserException.InvalidException("El tamaño de pagina debe ser mayor que 0"));
+        }
+        // Se busca la pagina en el repositorio local
+        return localRepository.getPage(afterId, limit)
+                .flatMap(users -> {
+                    if (!users.isEmpty()) {
+                        return Single.just(users);
+                    }
+                    // Si no hay datos en local se pide la pagina a la API y se guarda
+                    return remoteRepository.getPage(afterId, limit).flatMap(remoteUsers -> {
+                        if (remoteUsers.isEmpty()) {
+                            return Single.just(remoteUsers);
+                        }
+                        return localRepository.saveAll(remoteUsers)
+                                .doOnError(e -> logger.error(e.getMessage()))
+                                .onErrorReturnItem(0)
+                                .map(saved -> remoteUsers);
+                    });
+                });
     }
 
     @Override
     public Maybe<User> getById(long id) {
-        var user = userCache.getIfPresent(id);
-        // Si no es nulo, se devuelve dde la cache
-        if(user != null) {
+        // La cache devuelve el usuario si lo tiene y si no lo carga; si ya hay una carga en vuelo de este id, se comparte
+        return Maybe.defer(() -> Maybe.fromCompletionStage(userCache.get(id)))
+                // Si no estaba en ningun lado se devuelve un error
+                .switchIfEmpty(Maybe.error(new UserException("No existe el usuario con el id " + id)));
+    }
+
+    /**
+     * Devuelve las estadísticas de la caché de usuarios por id.
+     * @return Aciertos, fallos, cargas y expulsiones de la caché
+     */
+    public CacheMetrics getCacheMetrics() {
+        return UserCache.metrics(userCache.synchronous());
+    }
+
+    /**
+     * Devuelve las estadísticas de la caché de búsquedas por username y email.
+     * @return Aciertos, fallos y expulsiones de la caché
+     */
+    public CacheMetrics getLookupCacheMetrics() {
+        return UserCache.metrics(lookupCache);
+    }
+
+    /**
+     * Cargador de la cache por id: busca el usuario en el repositorio local y, si no esta, en la API.
+     * Tambien se usa para los refrescos en segundo plano de los usuarios mas usados.
+     * @param id
+     * @return El usuario encontrado, vacio si no existe
+     */
+    private Maybe<User> loadById(long id) {
+        // Se busca en el repositorio local
+        return localRepository.getById(id).doOnSuccess(this::cacheLookups)
+                .switchIfEmpty(
+                        // Si no se ha encontrado en el local, se busca en el remoto y se guarda en local
+                        remoteRepository.getById(id).flatMap(u -> {
+                            cacheLookups(u);
+                            return saveLocally(u);
+                        })
+                );
+    }
+
+    /**
+     * Busca varios usuarios por id en tres fases como mucho: los que estan en la cache se sirven de una vez,
+     * los que faltan se buscan en el repositorio local con una sola consulta y el resto se piden a la API
+     * con un numero limitado de peticiones en vuelo. Los encontrados en la API se guardan en local.
+     * @param ids
+     * @return Los usuarios encontrados por id, los que no existen en ningun sitio no aparecen
+     */
+    @Override
+    public Single<Map<Long, User>> getByIds(Collection<Long> ids) {
+        logger.info("Obteniendo " + ids.size() + " usuarios por id");
+        return Single.defer(() -> {
+            Set<Long> pending = new LinkedHashSet<>(ids);
+            Map<Long, User> found = new HashMap<>(userCache.synchronous().getAllPresent(pending));
+            pending.removeAll(found.keySet());
+            if (pending.isEmpty()) {
+                return Single.just(found);
+            }
+            return localRepository.getByIds(pending).flatMap(localUsers -> {
+                localUsers.forEach(u -> {
+                    userCache.synchronous().put(u.getId(), u);
+                    cacheLookups(u);
+                    found.put(u.getId(), u);
+                });
+                List<Long> remoteIds = pending.stream().filter(id -> !found.containsKey(id)).toList();
+                if (remoteIds.isEmpty()) {
+                    return Single.just(found);
+                }
+                // El fallo de un id en la API (ya reintentado) no hace fallar al resto, ese id no aparece en el resultado
+                return Flowable.fromIterable(remoteIds)
+                        .flatMapMaybe(id -> remoteRepository.getById(id)
+                                        .doOnError(e -> logger.error(e.getMessage()))
+                                        .onErrorComplete(),
+                                false, Config.getInstance().getRemoteBulkParallelism())
+                        .toList()
+                        .flatMap(remoteUsers -> {
+                            remoteUsers.forEach(u -> {
+                                userCache.synchronous().put(u.getId(), u);
+                                cacheLookups(u);
+                                found.put(u.getId(), u);
+                            });
+                            return saveAllLocally(remoteUsers).map(saved -> found);
+                        });
+            });
+        });
+    }
+
+    @Override
+    public Maybe<User> getByUsername(String username) {
+        logger.info("Obteniendo el usuario con username: " + username);
+        return findByAttribute(
+                usernameKey(username),
+                Maybe.defer(() -> localRepository.getByUsername(username)),
+                Maybe.defer(() -> remoteRepository.getByUsername(username)),
+                "No existe el usuario con el username " + username
+        );
+    }
+
+    @Override
+    public Maybe<User> getByEmail(String email) {
+        logger.info("Obteniendo el usuario con email: " + email);
+        return findByAttribute(
+                emailKey(email),
+                Maybe.defer(() -> localRepository.getByEmail(email)),
+                Maybe.defer(() -> remoteRepository.getByEmail(email)),
+                "No existe el usuario con el email " + email
+        );
+    }
+
+    /**
+     * Busca un usuario por un atributo secundario siguiendo el mismo orden que getById: cache, repositorio local y API.
+     * @param cacheKey Clave del usuario en la cache de busquedas
+     * @param local Busqueda diferida en el repositorio local
+     * @param remote Busqueda diferida en la API
+     * @param notFoundMessage Mensaje del error si no se encuentra en ningun sitio
+     * @return El usuario encontrado
+     */
+    private Maybe<User> findByAttribute(String cacheKey, Maybe<User> local, Maybe<User> remote, String notFoundMessage) {
+        var user = lookupCache.getIfPresent(cacheKey);
+        // Si no es nulo, se devuelve de la cache
+        if (user != null) {
             return Maybe.just(user);
         }
-        // Se busca en el repositorio local
-        return localRepository.getById(id).doOnSuccess(u -> {
-            // Si se encuentra en el local, se guarda en la cache
-            userCache.put(id, u);
+        return local.doOnSuccess(u -> {
+            userCache.synchronous().put(u.getId(), u);
+            cacheLookups(u);
         }).switchIfEmpty(
-                // Si no se ha encontrado en el local, se busca en el remoto
-                remoteRepository.getById(id).doOnSuccess(u -> {
-                    // Si se encuentra en el remoto, se guarda en la cache y en el repositorio local
-                    userCache.put(id, u);
-                    localRepository.save(u);
+                remote.flatMap(u -> {
+                    userCache.synchronous().put(u.getId(), u);
+                    cacheLookups(u);
+                    return saveLocally(u);
                 })
-                // Finalmente, si no estaba en ningun lado se devuelve un error
-        ).switchIfEmpty(Maybe.error(new UserException("No existe el usuario con el id " + id)))
-                .subscribeOn(Schedulers.io());
+        ).switchIfEmpty(Maybe.error(new UserException(notFoundMessage)));
     }
 
     @Override
@@ -76,9 +263,10 @@ public class UserServiceImpl implements UserService {
         try {
             UserValidator.validate(user);
             // Se guarda el usuario en la API
-            return remoteRepository.save(user).doOnSuccess(u -> {
-                userCache.put(u.getId(), u);
-                localRepository.save(u);
+            return remoteRepository.save(user).flatMap(u -> {
+                userCache.synchronous().put(u.getId(), u);
+                cacheLookups(u);
+                return saveLocally(u);
             }).doOnError(e -> {
                 logger.error(e.getMessage());
             });
@@ -94,12 +282,15 @@ public class UserServiceImpl implements UserService {
         // Se intenta actualizar en la API
         try {
             UserValidator.validate(user);
-            return remoteRepository.update(user, id).doOnSuccess(updated -> {
+            return remoteRepository.update(user, id).flatMap(updated -> {
                 // Si se actualiza correctamente se actualiza de la cache y de la BD
-                userCache.put(id, updated);
-                localRepository.update(updated, id);
+                userCache.synchronous().put(id, updated);
+                // El username o el email pueden haber cambiado, se quitan las entradas antiguas
+                invalidateLookups(id);
+                cacheLookups(updated);
+                return updateLocally(updated, id);
                 //Si no se actualiza se devuelve un error
-            }).switchIfEmpty(Maybe.error(new UserException("No existe el usuario con el id " + id))).subscribeOn(Schedulers.io());
+            }).switchIfEmpty(Maybe.error(new UserException("No existe el usuario con el id " + id)));
         }
         catch (Exception e){
             return Maybe.error(e);
@@ -110,14 +301,14 @@ public class UserServiceImpl implements UserService {
     public Maybe<User> delete(long id) {
         logger.info("Eliminando el usuario con ID: " + id);
         // Se intenta borrar el usuario de la API
-        return remoteRepository.delete(id).doOnSuccess(deleted -> {
+        return remoteRepository.delete(id).flatMap(deleted -> {
             // Si se borra correctamente, tambien se borra de la cache y de la BD
-            userCache.invalidate(id);
-            localRepository.delete(id);
+            userCache.synchronous().invalidate(id);
+            invalidateLookups(id);
             logger.info("Eliminado correctamente el usuario con ID: " + id);
+            return deleteLocally(id, deleted);
             // Si no, se devuelve un error
-        }).switchIfEmpty(Maybe.error(new UserException("No existe el usuario con id " + id)))
-                .subscribeOn(Schedulers.io());
+        }).switchIfEmpty(Maybe.error(new UserException("No existe el usuario con id " + id)));
     }
 
     @Override
@@ -127,26 +318,161 @@ public class UserServiceImpl implements UserService {
         }).subscribeOn(Schedulers.io());
     }
 
+    /**
+     * Guarda en local un usuario devuelto por la API, en la cola de escritura diferida si esta activada.
+     * @param user
+     * @return El usuario de la API
+     */
+    private Maybe<User> saveLocally(User user) {
+        if (writeBehindQueue != null) {
+            return writeBehindQueue.save(user).andThen(Maybe.just(user));
+        }
+        return persistLocally(localRepository.save(user), user);
+    }
+
+    /**
+     * Guarda en local una lista de usuarios devueltos por la API en un solo lote, o en la cola de escritura
+     * diferida si esta activada. Un fallo local no hace fallar la operacion, solo se registra.
+     * @param users
+     * @return Los usuarios de la API
+     */
+    private Single<List<User>> saveAllLocally(List<User> users) {
+        if (users.isEmpty()) {
+            return Single.just(users);
+        }
+        if (writeBehindQueue != null) {
+            return Flowable.fromIterable(users).concatMapCompletable(writeBehindQueue::save).toSingleDefault(users);
+        }
+        return localRepository.applyWrites(users, List.of())
+                .doOnError(e -> logger.error(e.getMessage()))
+                .onErrorReturnItem(0)
+                .map(saved -> users);
+    }
+
+    /**
+     * Actualiza en local un usuario devuelto por la API. En la cola de escritura diferida se guarda como un
+     * guardado mas, que inserta o actualiza, porque la API ya ha confirmado que el usuario existe.
+     * @param user
+     * @param id
+     * @return El usuario de la API
+     */
+    private Maybe<User> updateLocally(User user, long id) {
+        if (writeBehindQueue != null) {
+            return writeBehindQueue.save(user).andThen(Maybe.just(user));
+        }
+        return persistLocally(localRepository.update(user, id), user);
+    }
+
+    /**
+     * Borra en local un usuario borrado en la API, en la cola de escritura diferida si esta activada.
+     * @param id
+     * @param deleted El usuario borrado devuelto por la API
+     * @return El usuario borrado
+     */
+    private Maybe<User> deleteLocally(long id, User deleted) {
+        if (writeBehindQueue != null) {
+            return writeBehindQueue.delete(id).andThen(Maybe.just(deleted));
+        }
+        return persistLocally(localRepository.delete(id), deleted);
+    }
+
+    /**
+     * Encadena la escritura en el repositorio local tras una operacion en la API. Como los repositorios son perezosos,
+     * la escritura solo se hace si forma parte de la cadena. Un fallo local no hace fallar la operacion, solo se registra.
+     * @param localWrite La escritura en el repositorio local
+     * @param user El usuario devuelto por la API
+     * @return El usuario de la API una vez terminada la escritura local
+     */
+    private Maybe<User> persistLocally(Maybe<User> localWrite, User user) {
+        return localWrite.ignoreElement()
+                .doOnError(e -> logger.error(e.getMessage()))
+                .onErrorComplete()
+                .andThen(Maybe.just(user));
+    }
+
+    /**
+     * Guarda el usuario en la cache de busquedas por username y por email.
+     * @param user
+     */
+    private void cacheLookups(User user) {
+        lookupCache.put(usernameKey(user.getUsername()), user);
+        lookupCache.put(emailKey(user.getEmail()), user);
+    }
+
+    /**
+     * Elimina de la cache de busquedas todas las entradas que apuntan al usuario con el id indicado.
+     * @param id
+     */
+    private void invalidateLookups(long id) {
+        lookupCache.asMap().values().removeIf(u -> u.getId() == id);
+    }
+
+    /**
+     * Elimina de las caches los usuarios con los ids indicados.
+     * @param ids
+     */
+    private void invalidateStale(Set<Long> ids) {
+        if (ids.isEmpty()) return;
+        userCache.synchronous().invalidateAll(ids);
+        lookupCache.asMap().values().removeIf(u -> ids.contains(u.getId()));
+    }
+
+    private static String usernameKey(String username) {
+        return "username:" + username;
+    }
+
+    private static String emailKey(String email) {
+        return "email:" + email;
+    }
+
+    /**
+     * Sincroniza la base de datos embebida con la API aplicando solo los cambios: inserta los usuarios nuevos,
+     * actualiza los modificados y borra los que ya no existen en una unica transaccion.
+     * La lista se pide de forma condicional, por lo que si no ha cambiado desde la ultima sincronizacion
+     * no se descarga ni se toca la base de datos.
+     * @return Resumen de los cambios aplicados, o vacio si la lista de la API no ha cambiado
+     */
+    public Maybe<SyncResult> synchronize() {
+        return remoteRepository.getAllIfModified()
+                .map(users -> users.stream().filter(user -> {
+                    try {
+                        return UserValidator.validate(user);
+                    }
+                    catch (Exception e){
+                        logger.error(e.getMessage());
+                        return false;
+                    }
+                }).toList())
+                .flatMapSingle(localRepository::synchronize)
+                // Si no se ha podido aplicar, la proxima vez hay que descargar la lista aunque no haya cambiado
+                .doOnError(e -> remoteRepository.resetValidators())
+                // Las copias en cache de los usuarios actualizados o borrados ya no son validas
+                .doOnSuccess(result -> invalidateStale(result.getStaleIds()))
+                .doOnSuccess(result -> logger.info("Sincronizacion: " + result.getInserted() + " insertados, "
+                        + result.getUpdated() + " actualizados, " + result.getDeleted() + " borrados, "
+                        + result.getUnchanged() + " sin cambios" + (result.isFullRefresh() ? " (recarga completa)" : "")));
+    }
+
+    /**
+     * Devuelve la cola de escritura diferida, vacio si las escrituras locales son sincronas.
+     * @return Optional de la cola
+     */
+    public Optional<UserWriteBehindQueue> getWriteBehindQueue() {
+        return Optional.ofNullable(writeBehindQueue);
+    }
+
     public Single<Boolean> refreshLocalRepository() {
         logger.info("Sincronizando la base de datos embebida con la API.");
-        localRepository.deleteAll();
-        return remoteRepository.getAll()
-                .map(users -> {
-                    for(User user : users) {
-                        try {
-                            UserValidator.validate(user);
-                            localRepository.save(user);
-                        }
-                        catch (Exception e){
-                            logger.error(e.getMessage());
-                        }
-                    }
+        return synchronize()
+                .map(result -> {
                     logger.info("Base de datos local sincronizada con exito");
                     return true;
                 })
+                // Si la lista de la API no ha cambiado no hay nada que sincronizar
+                .defaultIfEmpty(true)
                 .onErrorReturn(error ->{
                     logger.error(error.getMessage());
                     return false;
-                }).subscribeOn(Schedulers.io());
+                });
     }
 }
@@ -1,9 +1,7 @@
 package org.example.storage;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import io.reactivex.rxjava3.core.Single;
+import org.example.config.AppObjectMapper;
 import org.example.exceptions.UserException;
 import org.example.models.User;
 import org.slf4j.Logger;
@@ -29,13 +27,8 @@ public class UserStorageImpl implements UserStorage {
         try{
             if(!file.isFile() || !file.exists()) throw new UserException.StorageException("Error, el archivo no existe o no es un archivo.");
             if(!file.getPath().endsWith(".json")) throw new UserException.StorageException("Error, el archivo no es un JSON.");
-            // Clase que mapea campos de un objeto a un JSON
-            ObjectMapper mapper = new ObjectMapper();
-            // Indentacion para que salga como un JSON
-            mapper.enable(SerializationFeature.INDENT_OUTPUT);
-            // Modulo para poder serializar y deserializar fechas
-            mapper.registerModule(new JavaTimeModule());
-            mapper.writeValue(file, users);
+            // Se usa el writer con sangrado compartido, que ya tiene construidos los serializadores
+            AppObjectMapper.prettyWriter().writeValue(file, users);
             logger.info("JSON completado");
             return Single.just(users.size());
         }
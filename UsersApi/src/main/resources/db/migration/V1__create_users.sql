@@ -1,5 +1,3 @@
-DROP TABLE IF EXISTS users;
-
 CREATE TABLE IF NOT EXISTS users(
     id BIGINT PRIMARY KEY,
     name VARCHAR(40) NOT NULL,
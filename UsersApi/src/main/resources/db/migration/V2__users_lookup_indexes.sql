@@ -0,0 +1,3 @@
+-- Indices para las busquedas por username y email
+CREATE INDEX IF NOT EXISTS idx_users_username ON users(username);
+CREATE INDEX IF NOT EXISTS idx_users_email ON users(email);
\ No newline at end of file
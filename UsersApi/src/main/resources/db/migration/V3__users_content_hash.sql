@@ -0,0 +1,2 @@
+-- Huella del contenido de cada usuario para la sincronizacion incremental
+ALTER TABLE users ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
\ No newline at end of file
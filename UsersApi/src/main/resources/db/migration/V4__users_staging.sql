@@ -0,0 +1,10 @@
+-- Tabla de carga para las recargas completas: se llena fuera de la transaccion y se copia a users de forma atomica
+CREATE TABLE IF NOT EXISTS users_staging(
+    id BIGINT PRIMARY KEY,
+    name VARCHAR(40) NOT NULL,
+    username VARCHAR(80) NOT NULL,
+    email VARCHAR (255) NOT NULL,
+    content_hash VARCHAR(64),
+    created_at TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP NOT NULL
+);
\ No newline at end of file
@@ -0,0 +1,202 @@
+package repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.example.rest.UserApiEntity;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Servidor HTTP local que imita la API de usuarios (los mismos endpoints que UsersApiDao) para medir el camino
+ * HTTP real sin depender de internet. Se puede configurar el numero de usuarios, la latencia de cada respuesta
+ * (log-normal alrededor de la mediana) y la proporcion de respuestas 503.
+ */
+public class FakeUsersApiServer implements AutoCloseable {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ConcurrentSkipListMap<Long, UserApiEntity> users = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    // Version de la lista, cambia con cada escritura y se usa como ETag
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    // Segundos de Cache-Control: max-age de las respuestas GET, -1 para no enviar la cabecera
+    private volatile long cacheMaxAgeSeconds = -1;
+    private final long medianLatencyMillis;
+    private final double latencySigma;
+    private final double errorRate;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Arranca el servidor en un puerto libre de localhost.
+     * @param userCount Numero de usuarios con los que empieza la API (ids 1..userCount)
+     * @param medianLatencyMillis Mediana de la latencia de cada respuesta, 0 para responder al instante
+     * @param latencySigma Dispersion de la latencia log-normal (0 = siempre la mediana)
+     * @param errorRate Proporcion de peticiones que responden 503, entre 0 y 1
+     */
+    public FakeUsersApiServer(int userCount, long medianLatencyMillis, double latencySigma, double errorRate) throws IOException {
+        this.medianLatencyMillis = medianLatencyMillis;
+        this.latencySigma = latencySigma;
+        this.errorRate = errorRate;
+        for (long id = 1; id <= userCount; id++) {
+            users.put(id, new UserApiEntity(id, "Usuario " + id, "usuario" + id, "usuario" + id + "@example.com"));
+        }
+        nextId.set(userCount);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        // Cada peticion en su hilo, para que la latencia simulada no frene al resto
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/users", this::handle);
+        server.start();
+    }
+
+    /**
+     * URL base para el cliente Retrofit, terminada en "/".
+     */
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Hace que las respuestas GET lleven Cache-Control: max-age con los segundos indicados.
+     * @param seconds Segundos que el cliente puede reutilizar la respuesta, -1 para no enviar la cabecera
+     */
+    public void setCacheMaxAgeSeconds(long seconds) {
+        this.cacheMaxAgeSeconds = seconds;
+    }
+
+    /**
+     * Numero de peticiones recibidas desde que arranco.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        // Se puede parar dentro de una prueba para simular que la API no responde
+        if (!closed.compareAndSet(false, true)) return;
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            simulateLatency();
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                send(exchange, 503, Map.of());
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            Long id = path.matches("/users/\\d+") ? Long.valueOf(path.substring("/users/".length())) : null;
+            String method = exchange.getRequestMethod();
+            // PUT y DELETE solo existen sobre /users/{id}
+            if (id == null && (method.equals("PUT") || method.equals("DELETE"))) {
+                send(exchange, 405, Map.of());
+                return;
+            }
+            switch (method) {
+                case "GET" -> {
+                    if (id == null) list(exchange);
+                    else sendUser(exchange, users.get(id), 200);
+                }
+                case "POST" -> {
+                    UserApiEntity user = mapper.readValue(exchange.getRequestBody(), UserApiEntity.class);
+                    user.setId(nextId.incrementAndGet());
+                    users.put(user.getId(), user);
+                    version.incrementAndGet();
+                    sendUser(exchange, user, 201);
+                }
+                case "PUT" -> {
+                    UserApiEntity user = mapper.readValue(exchange.getRequestBody(), UserApiEntity.class);
+                    user.setId(id);
+                    boolean existed = users.replace(id, user) != null;
+                    if (existed) version.incrementAndGet();
+                    sendUser(exchange, existed ? user : null, 200);
+                }
+                case "DELETE" -> {
+                    boolean existed = users.remove(id) != null;
+                    if (existed) version.incrementAndGet();
+                    send(exchange, existed ? 200 : 404, Map.of());
+                }
+                default -> send(exchange, 405, Map.of());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * GET /users con los filtros que usa UsersApiDao: username, email, id_gte y _limit, y el ETag de la lista.
+     */
+    private void list(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        String etag = "\"" + version.get() + "\"";
+        if (query.isEmpty() && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        long fromId = Long.parseLong(query.getOrDefault("id_gte", "0"));
+        Stream<UserApiEntity> result = users.tailMap(fromId).values().stream();
+        if (query.containsKey("username")) result = result.filter(u -> u.getUsername().equals(query.get("username")));
+        if (query.containsKey("email")) result = result.filter(u -> u.getEmail().equals(query.get("email")));
+        if (query.containsKey("_limit")) result = result.limit(Long.parseLong(query.get("_limit")));
+        if (query.isEmpty()) exchange.getResponseHeaders().set("ETag", etag);
+        send(exchange, 200, result.toList());
+    }
+
+    private void sendUser(HttpExchange exchange, UserApiEntity user, int code) throws IOException {
+        if (user == null) send(exchange, 404, Map.of());
+        else send(exchange, code, user);
+    }
+
+    private void send(HttpExchange exchange, int code, Object body) throws IOException {
+        byte[] json = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (cacheMaxAgeSeconds >= 0 && exchange.getRequestMethod().equals("GET")) {
+            exchange.getResponseHeaders().set("Cache-Control", "max-age=" + cacheMaxAgeSeconds);
+        }
+        exchange.sendResponseHeaders(code, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+
+    private void simulateLatency() throws InterruptedException {
+        if (medianLatencyMillis <= 0) return;
+        double factor = Math.exp(latencySigma * ThreadLocalRandom.current().nextGaussian());
+        Thread.sleep(Math.round(medianLatencyMillis * factor));
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return params;
+        for (String pair : rawQuery.split("&")) {
+            String[] parts = pair.split("=", 2);
+            String value = parts.length > 1 ? URLDecoder.decode(parts[1], StandardCharsets.UTF_8) : "";
+            // Los parametros de orden los aplica siempre el servidor
+            if (!List.of("_sort", "_order").contains(parts[0])) params.put(parts[0], value);
+        }
+        return params;
+    }
+}
@@ -0,0 +1,111 @@
+package repository;
+
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.example.rest.HttpMetrics;
+import org.example.rest.HttpMetricsTracker;
+import org.example.rest.RetrofitClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Pruebas de la caché HTTP en disco y de la respuesta sin conexión (OfflineCacheInterceptor) contra el servidor
+ * local FakeUsersApiServer, con la caché en un directorio temporal.
+ */
+class RetrofitClientCacheTest {
+    @TempDir
+    File cacheDir;
+
+    private FakeUsersApiServer server;
+    private Cache cache;
+    private HttpMetricsTracker metrics;
+    private Call.Factory client;
+    // Se guarda aparte porque el servidor ya no da su direccion una vez parado
+    private String baseUrl;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new FakeUsersApiServer(3, 0, 0, 0);
+        cache = new Cache(cacheDir, 1024 * 1024);
+        metrics = new HttpMetricsTracker();
+        baseUrl = server.getBaseUrl();
+        client = RetrofitClient.create(baseUrl, cache, metrics).callFactory();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+        cache.close();
+    }
+
+    private String get(String path) throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(baseUrl + path).build()).execute()) {
+            assertEquals(200, response.code());
+            return response.body().string();
+        }
+    }
+
+    @Test
+    void freshResponseIsServedFromDiskWithoutRequest() throws IOException {
+        server.setCacheMaxAgeSeconds(60);
+        String first = get("users/1");
+
+        String second = get("users/1");
+
+        assertEquals(first, second);
+        // La segunda lectura no llega al servidor
+        assertEquals(1, server.getRequests());
+        HttpMetrics snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getCacheMisses());
+        assertEquals(1, snapshot.getCacheHits());
+    }
+
+    @Test
+    void networkFailureServesStaleCopy() throws IOException {
+        // Sin max-age la respuesta se guarda pero hay que volver a preguntar a la API
+        String first = get("users/1");
+        server.close();
+
+        String offline = get("users/1");
+
+        assertEquals(first, offline);
+        assertEquals(1, metrics.snapshot().getOfflineCacheHits());
+    }
+
+    @Test
+    void networkFailureWithoutCachedCopyRethrows() {
+        server.close();
+
+        assertThrows(IOException.class, () -> get("users/2"));
+        assertEquals(0, metrics.snapshot().getOfflineCacheHits());
+    }
+
+    @Test
+    void nonGetRequestsAreNeverServedFromCache() throws IOException {
+        server.setCacheMaxAgeSeconds(60);
+        get("users");
+        server.close();
+
+        Request post = new Request.Builder()
+                .url(baseUrl + "users")
+                .post(RequestBody.create("{\"name\":\"Pepe\",\"username\":\"pepe\",\"email\":\"pepe@mail.com\"}",
+                        MediaType.parse("application/json")))
+                .build();
+
+        // El POST no se responde con el GET guardado de la misma URL, llega el error de red
+        assertThrows(IOException.class, () -> client.newCall(post).execute().close());
+        assertEquals(0, metrics.snapshot().getOfflineCacheHits());
+    }
+}
@@ -1,25 +1,42 @@
 package repository;
 
 import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+import okhttp3.Headers;
 import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
 import okhttp3.ResponseBody;
 import org.example.exceptions.UserException;
 import org.example.mapper.UserMapper;
 import org.example.models.User;
 import org.example.repository.UserRemoteRepositoryImpl;
+import org.example.resilience.AdaptiveConcurrencyLimiter;
+import org.example.resilience.Bulkhead;
+import org.example.resilience.CircuitBreaker;
+import org.example.resilience.HedgingPolicy;
+import org.example.resilience.RetryBudget;
+import org.example.resilience.RetryPolicy;
 import org.example.rest.UserApiEntity;
 import org.example.rest.UsersApiDao;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import retrofit2.Call;
 import retrofit2.Response;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
 
 class UserRemoteRepositoryImplTest {
+    private static final String USER_JSON = "[{\"id\":1,\"name\":\"Pepe\",\"username\":\"pepelocatis\",\"email\":\"pepelocatis@gmail.com\"}]";
 
     private UsersApiDao api;
     private UserRemoteRepositoryImpl repository;
@@ -29,21 +46,70 @@ class UserRemoteRepositoryImplTest {
     @BeforeEach
     void setUp() {
         api = mock(UsersApiDao.class);
-        repository = new UserRemoteRepositoryImpl(api);
+        // Reintentos sin espera para que los tests no dependan del tiempo
+        repository = withCircuit(10);
 
         userApiEntity = new UserApiEntity(1L, "Pepe", "pepelocatis", "pepelocatis@gmail.com");
         user = UserMapper.toUser(userApiEntity);
     }
 
+    /**
+     * Circuito que se abre con la mitad de fallos en cuanto hay el minimo de llamadas indicado (ventana del doble).
+     */
+    private static CircuitBreaker circuit(int minimumCalls) {
+        return new CircuitBreaker("test", minimumCalls * 2, minimumCalls, 0.5, 60_000);
+    }
+
+    /**
+     * Politica de hedging desactivada: nunca se lanzan peticiones duplicadas.
+     */
+    private static HedgingPolicy noHedging() {
+        return new HedgingPolicy(false, 0.95, 20, 1000, 200, 0.1, new TestScheduler());
+    }
+
+    /**
+     * Reintentos sin espera de los metodos idempotentes, con el presupuesto indicado.
+     */
+    private static RetryPolicy retries(int maxAttempts, int budget) {
+        return new RetryPolicy(maxAttempts, 0, 0, Set.of("GET", "PUT", "DELETE"),
+                new RetryBudget(budget, 0.1), Schedulers.trampoline());
+    }
+
+    /**
+     * Repositorio con el circuito indicado, sin hedging, con 3 intentos y limites holgados.
+     */
+    private UserRemoteRepositoryImpl withCircuit(int minimumCalls) {
+        return withResilience(circuit(minimumCalls), noHedging(), retries(3, 20));
+    }
+
+    private UserRemoteRepositoryImpl withResilience(CircuitBreaker circuitBreaker, HedgingPolicy hedgingPolicy, RetryPolicy retryPolicy) {
+        return new UserRemoteRepositoryImpl(api, circuitBreaker, hedgingPolicy,
+                new AdaptiveConcurrencyLimiter(20, 4, 256, 0.9, 2.0, 1000),
+                new Bulkhead("read", 500),
+                new Bulkhead("write", 100),
+                retryPolicy);
+    }
+
+    private static Response<ResponseBody> usersJson(String json, Headers headers) {
+        return Response.success(ResponseBody.create(MediaType.parse("application/json"), json), headers);
+    }
+
+    private static Response<ResponseBody> notModified() {
+        okhttp3.Response raw = new okhttp3.Response.Builder()
+                .code(304)
+                .message("Not Modified")
+                .protocol(Protocol.HTTP_1_1)
+                .request(new Request.Builder().url("http://localhost/users").build())
+                .build();
+        return Response.error(ResponseBody.create(MediaType.parse("application/json"), ""), raw);
+    }
+
 
     @Test
-    void getAllOk() throws IOException {
-        // Hay que mockear tanto la llamada a la API como su respuesta
-        Call<List<UserApiEntity>> call = mock(Call.class);
+    void getAllOk() {
         Response<List<UserApiEntity>> response = Response.success(List.of(userApiEntity));
 
-        when(api.getAll()).thenReturn(call);
-        when(call.execute()).thenReturn(response);
+        when(api.getAll()).thenReturn(Single.just(response));
 
         TestObserver<List<User>> testObserver = repository.getAll().test();
 
@@ -56,12 +122,10 @@ class UserRemoteRepositoryImplTest {
 
 
     @Test
-    void getAllApiError() throws IOException {
-        Call<List<UserApiEntity>> call = mock(Call.class);
+    void getAllApiError() {
         Response<List<UserApiEntity>> response = Response.error(500, ResponseBody.create(MediaType.parse("users"), ""));
 
-        when(api.getAll()).thenReturn(call);
-        when(call.execute()).thenReturn(response);
+        when(api.getAll()).thenReturn(Single.just(response));
 
         TestObserver<List<User>> testObserver = repository.getAll().test();
 
@@ -72,12 +136,107 @@ class UserRemoteRepositoryImplTest {
 
 
     @Test
-    void getByIdOk() throws IOException {
-        Call<UserApiEntity> call = mock(Call.class);
+    void getAllIfModifiedSendsStoredValidators() {
+        Headers headers = Headers.of("ETag", "\"v1\"", "Last-Modified", "Wed, 01 Oct 2025 10:00:00 GMT");
+
+        when(api.getAllIfModified(null, null)).thenReturn(Single.just(usersJson(USER_JSON, headers)));
+        when(api.getAllIfModified("\"v1\"", "Wed, 01 Oct 2025 10:00:00 GMT")).thenReturn(Single.just(notModified()));
+
+        // La primera vez no hay validadores y se descarga la lista
+        repository.getAllIfModified().test()
+                .assertComplete()
+                .assertValue(users -> users.size() == 1 && users.get(0).equals(user));
+
+        // La segunda se envian los de la respuesta anterior y la API responde 304
+        repository.getAllIfModified().test()
+                .assertComplete()
+                .assertNoErrors()
+                .assertNoValues();
+    }
+
+
+    @Test
+    void getAllIfModifiedAfterResetDownloadsAgain() {
+        // Cada respuesta tiene su propio cuerpo, que solo se puede leer una vez
+        when(api.getAllIfModified(null, null)).thenAnswer(invocation -> Single.just(usersJson(USER_JSON, Headers.of("ETag", "\"v1\""))));
+
+        repository.getAllIfModified().test().assertValue(users -> users.size() == 1);
+        repository.resetValidators();
+        repository.getAllIfModified().test().assertValue(users -> users.size() == 1);
+
+        verify(api, times(2)).getAllIfModified(null, null);
+    }
+
+
+    @Test
+    void getAllIfModifiedMalformedBodyKeepsValidators() {
+        when(api.getAllIfModified(null, null)).thenReturn(Single.just(usersJson("[" + USER_JSON.substring(1, 20), Headers.of("ETag", "\"v1\""))));
+
+        repository.getAllIfModified().test().assertError(IOException.class);
+
+        // Como la lista no se ha leido entera no se guardan sus validadores
+        when(api.getAllIfModified(null, null)).thenReturn(Single.just(usersJson("[]", Headers.of())));
+        repository.getAllIfModified().test().assertValue(List::isEmpty);
+        verify(api, never()).getAllIfModified(eq("\"v1\""), any());
+    }
+
+
+    @Test
+    void streamAllOk() {
+        String json = "[{\"id\":1,\"name\":\"Pepe\",\"username\":\"pepelocatis\",\"email\":\"pepelocatis@gmail.com\",\"phone\":\"600\"},"
+                + "{\"id\":2,\"name\":\"Ana\",\"username\":\"anita\",\"email\":\"ana@gmail.com\"}]";
+        when(api.streamAll()).thenReturn(Single.just(usersJson(json, Headers.of())));
+
+        TestSubscriber<User> testSubscriber = repository.streamAll().test(1);
+
+        // Con contrapresion solo se lee el primer usuario hasta que se pide el siguiente
+        testSubscriber.assertValueCount(1);
+        testSubscriber.assertValue(u -> u.equals(user));
+        testSubscriber.requestMore(Long.MAX_VALUE);
+        testSubscriber.assertComplete();
+        testSubscriber.assertValueCount(2);
+    }
+
+
+    @Test
+    void streamAllMalformedJson() {
+        when(api.streamAll()).thenReturn(Single.just(usersJson("{\"id\":1}", Headers.of())));
+
+        repository.streamAll().test().assertError(IOException.class);
+    }
+
+
+    @Test
+    void streamAllApiError() {
+        Response<ResponseBody> response = Response.error(500, ResponseBody.create(MediaType.parse("users"), ""));
+        when(api.streamAll()).thenReturn(Single.just(response));
+
+        repository.streamAll().test().assertError(UserException.ApiException.class);
+    }
+
+
+    @Test
+    void getPageOk() {
+        Response<List<UserApiEntity>> response = Response.success(List.of(userApiEntity));
+
+        when(api.getPage(1L, 10)).thenReturn(Single.just(response));
+
+        TestObserver<List<User>> testObserver = repository.getPage(0L, 10).test();
+
+        testObserver.assertComplete();
+        testObserver.assertNoErrors();
+        testObserver.assertValue(users -> users.size() == 1 && users.get(0).getId() == 1L);
+
+        // Se pide a la API a partir del id siguiente al ultimo leido
+        verify(api, times(1)).getPage(1L, 10);
+    }
+
+
+    @Test
+    void getByIdOk() {
         Response<UserApiEntity> response = Response.success(userApiEntity);
 
-        when(api.getById(1L)).thenReturn(call);
-        when(call.execute()).thenReturn(response);
+        when(api.getById(1L)).thenReturn(Single.just(response));
 
         TestObserver<User> testObserver = repository.getById(1L).test();
 
@@ -90,12 +249,10 @@ class UserRemoteRepositoryImplTest {
 
 
     @Test
-    void getByIdNotFound() throws IOException {
-        Call<UserApiEntity> call = mock(Call.class);
-        Response<UserApiEntity> response = Response.error(500, ResponseBody.create(MediaType.parse("users/99"), ""));
+    void getByIdNotFound() {
+        Response<UserApiEntity> response = Response.error(404, ResponseBody.create(MediaType.parse("users/99"), ""));
 
-        when(api.getById(99L)).thenReturn(call);
-        when(call.execute()).thenReturn(response);
+        when(api.getById(99L)).thenReturn(Single.just(response));
 
         TestObserver<User> testObserver = repository.getById(99L).test();
 
@@ -109,12 +266,196 @@ class UserRemoteRepositoryImplTest {
 
 
     @Test
-    void saveOk() throws IOException {
-        Call<UserApiEntity> call = mock(Call.class);
+    void getByIdConnectionErrorRetriedThenPropagated() {
+        // Un fallo de red llega como error del Single, no como respuesta
+        AtomicInteger calls = new AtomicInteger();
+        when(api.getById(1L)).thenReturn(Single.defer(() -> {
+            calls.incrementAndGet();
+            return Single.error(new IOException("Connection refused"));
+        }));
+
+        TestObserver<User> testObserver = repository.getById(1L).test();
+
+        // Tras agotar los intentos se devuelve el error, no un usuario inexistente
+        testObserver.assertError(IOException.class);
+        assertEquals(3, calls.get());
+    }
+
+
+    @Test
+    void getByIdRetriesTransientErrorThenSucceeds() {
+        Response<UserApiEntity> unavailable = Response.error(503, ResponseBody.create(MediaType.parse("users/1"), ""));
+        AtomicInteger calls = new AtomicInteger();
+        when(api.getById(1L)).thenReturn(Single.defer(() ->
+                Single.just(calls.incrementAndGet() == 1 ? unavailable : Response.success(userApiEntity))));
+
+        TestObserver<User> testObserver = repository.getById(1L).test();
+
+        testObserver.assertComplete();
+        testObserver.assertValue(u -> u.getId() == 1L);
+        assertEquals(2, calls.get());
+        assertEquals(1, repository.getResilienceMetrics().getRetries());
+    }
+
+
+    @Test
+    void retryBudgetStopsRetries() {
+        // Presupuesto de un solo reintento para todas las llamadas
+        repository = withResilience(circuit(10), noHedging(), retries(3, 1));
+        AtomicInteger calls = new AtomicInteger();
+        when(api.getById(1L)).thenReturn(Single.defer(() -> {
+            calls.incrementAndGet();
+            return Single.error(new IOException("Connection reset"));
+        }));
+
+        repository.getById(1L).test().assertError(IOException.class);
+        repository.getById(1L).test().assertError(IOException.class);
+
+        // La primera llamada gasta el unico reintento, la segunda ya no reintenta
+        assertEquals(3, calls.get());
+        assertEquals(2, repository.getResilienceMetrics().getRetriesExhausted());
+    }
+
+
+    @Test
+    void getByIdCircuitOpensOnServerErrors() {
+        // Circuito que se abre con la mitad de fallos en cuanto hay 2 llamadas
+        repository = withCircuit(2);
+        Response<UserApiEntity> serverError = Response.error(503, ResponseBody.create(MediaType.parse("users/1"), ""));
+        AtomicInteger calls = new AtomicInteger();
+        when(api.getById(1L)).thenReturn(Single.defer(() -> {
+            calls.incrementAndGet();
+            return Single.just(serverError);
+        }));
+
+        // El segundo intento abre el circuito y el tercero se rechaza sin llamar a la API: el llamador recibe el 503
+        // real del segundo intento, no el rechazo local
+        repository.getById(1L).test().assertError(e -> e instanceof UserException.ApiException api && api.getCode() == 503);
+        // Con el circuito abierto ya no se llama a la API ni se reintenta
+        repository.getById(1L).test().assertError(UserException.RejectedException.class);
+
+        assertEquals(2, calls.get());
+        assertEquals(CircuitBreaker.State.OPEN, repository.getResilienceMetrics().getCircuitState());
+        assertEquals(2, repository.getResilienceMetrics().getRejectedCalls());
+    }
+
+
+    @Test
+    void getByIdNotFoundDoesNotOpenCircuit() {
+        repository = withCircuit(2);
+        Response<UserApiEntity> notFound = Response.error(404, ResponseBody.create(MediaType.parse("users/99"), ""));
+        when(api.getById(99L)).thenReturn(Single.just(notFound));
+
+        for (int i = 0; i < 3; i++) {
+            repository.getById(99L).test().assertNoValues();
+        }
+
+        // Un 404 es una respuesta valida, el circuito sigue cerrado
+        verify(api, times(3)).getById(99L);
+        assertEquals(CircuitBreaker.State.CLOSED, repository.getResilienceMetrics().getCircuitState());
+    }
+
+
+    @Test
+    void getByIdHedgeAnswersWhenPrimaryIsSlow() {
+        TestScheduler scheduler = new TestScheduler();
+        repository = withResilience(circuit(2),
+                new HedgingPolicy(true, 0.95, 20, 100, 200, 1.0, scheduler),
+                retries(3, 20));
+        // La primera peticion no responde nunca, la copia responde al momento
+        when(api.getById(1L)).thenReturn(Single.never(), Single.just(Response.success(userApiEntity)));
+
+        TestObserver<User> testObserver = repository.getById(1L).test();
+        testObserver.assertNoValues();
+
+        // Sin latencias medidas la copia se lanza tras la espera maxima
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        testObserver.assertComplete();
+        testObserver.assertValue(u -> u.getId() == 1L);
+        verify(api, times(2)).getById(1L);
+        assertEquals(1, repository.getResilienceMetrics().getHedgeWins());
+    }
+
+
+    @Test
+    void saveRejectedWhenWriteBulkheadIsFull() {
+        // Un solo hueco para escrituras y ninguna llamada esperando en el limite
+        repository = new UserRemoteRepositoryImpl(api,
+                circuit(2),
+                noHedging(),
+                new AdaptiveConcurrencyLimiter(10, 1, 10, 0.9, 2.0, 0),
+                new Bulkhead("read", 10),
+                new Bulkhead("write", 1),
+                retries(3, 20));
+        when(api.create(any(UserApiEntity.class))).thenReturn(Single.never());
+
+        var first = repository.save(user).test();
+        var second = repository.save(user).test();
+
+        first.assertNotComplete();
+        second.assertError(UserException.RejectedException.class);
+        // Las lecturas tienen su propio compartimento y siguen funcionando
+        when(api.getById(1L)).thenReturn(Single.just(Response.success(userApiEntity)));
+        repository.getById(1L).test().assertValue(u -> u.getId() == 1L);
+    }
+
+
+    @Test
+    void concurrencyLimitDropsOnTooManyRequests() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 10, 0.5, 2.0, 100);
+        repository = new UserRemoteRepositoryImpl(api,
+                circuit(2),
+                noHedging(),
+                limiter,
+                new Bulkhead("read", 10),
+                new Bulkhead("write", 10),
+                // Sin reintentos, para ver el efecto de un solo 429
+                retries(1, 0));
+        Response<List<UserApiEntity>> tooMany = Response.error(429, ResponseBody.create(MediaType.parse("users"), ""));
+        when(api.getByEmail("pepelocatis@gmail.com")).thenReturn(Single.just(tooMany));
+
+        repository.getByEmail("pepelocatis@gmail.com").test().assertError(UserException.ApiException.class);
+
+        // Un 429 reduce el limite a la mitad
+        assertEquals(5, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+
+    @Test
+    void getByUsernameOk() {
+        Response<List<UserApiEntity>> response = Response.success(List.of(userApiEntity));
+
+        when(api.getByUsername("pepelocatis")).thenReturn(Single.just(response));
+
+        TestObserver<User> testObserver = repository.getByUsername("pepelocatis").test();
+
+        testObserver.assertComplete();
+        testObserver.assertNoErrors();
+        testObserver.assertValue(u -> u.getUsername().equals("pepelocatis"));
+    }
+
+
+    @Test
+    void getByEmailNotFound() {
+        Response<List<UserApiEntity>> response = Response.success(List.of());
+
+        when(api.getByEmail("nadie@mail.com")).thenReturn(Single.just(response));
+
+        TestObserver<User> testObserver = repository.getByEmail("nadie@mail.com").test();
+
+        testObserver.assertComplete();
+        testObserver.assertNoErrors();
+        testObserver.assertNoValues();
+    }
+
+
+    @Test
+    void saveOk() {
         Response<UserApiEntity> response = Response.success(userApiEntity);
 
-        when(api.create(any(UserApiEntity.class))).thenReturn(call);
-        when(call.execute()).thenReturn(response);
+        when(api.create(any(UserApiEntity.class))).thenReturn(Single.just(response));
 
         TestObserver<User> testObserver = repository.save(user).test();
 
@@ -127,32 +468,29 @@ class UserRemoteRepositoryImplTest {
 
 
     @Test
-    void saveError() throws IOException {
-        Call<UserApiEntity> call = mock(Call.class);
+    void saveError() {
         Response<UserApiEntity> response = Response.error(500, ResponseBody.create(MediaType.parse("users"), ""));
-
-        when(api.create(any(UserApiEntity.class))).thenReturn(call);
-        when(call.execute()).thenReturn(response);
+        AtomicInteger calls = new AtomicInteger();
+        when(api.create(any(UserApiEntity.class))).thenReturn(Single.defer(() -> {
+            calls.incrementAndGet();
+            return Single.just(response);
+        }));
 
         TestObserver<User> testObserver = repository.save(user).test();
 
         testObserver.assertError(UserException.ApiException.class);
-
+        // Un POST no es idempotente y no se reintenta
+        assertEquals(1, calls.get());
         verify(api, times(1)).create(any(UserApiEntity.class));
     }
     @Test
-    void deleteOk() throws IOException {
+    void deleteOk() {
         // Arrange
-        Call<UserApiEntity> getCall = (Call<UserApiEntity>) mock(Call.class);
-        Call<UserApiEntity> deleteCall = (Call<UserApiEntity>) mock(Call.class);
-
         Response<UserApiEntity> getResponse = Response.success(userApiEntity);
         Response<UserApiEntity> deleteResponse = Response.success(userApiEntity);
 
-        when(api.getById(1L)).thenReturn(getCall);
-        when(getCall.execute()).thenReturn(getResponse);
-        when(api.delete(1L)).thenReturn(deleteCall);
-        when(deleteCall.execute()).thenReturn(deleteResponse);
+        when(api.getById(1L)).thenReturn(Single.just(getResponse));
+        when(api.delete(1L)).thenReturn(Single.just(deleteResponse));
 
         // Act
         var testObserver = repository.delete(1L).test();
@@ -168,12 +506,10 @@ class UserRemoteRepositoryImplTest {
     }
 
     @Test
-    void deleteNotFound() throws IOException {
-        Call<UserApiEntity> getCall = (Call<UserApiEntity>) mock(Call.class);
-        Response<UserApiEntity> response = Response.error(500, ResponseBody.create(MediaType.parse("users/99"), ""));
+    void deleteNotFound() {
+        Response<UserApiEntity> response = Response.error(404, ResponseBody.create(MediaType.parse("users/99"), ""));
 
-        when(api.getById(99L)).thenReturn(getCall);
-        when(getCall.execute()).thenReturn(response);
+        when(api.getById(99L)).thenReturn(Single.just(response));
 
         // Act
         var testObserver = repository.delete(99L).test();
@@ -189,18 +525,13 @@ class UserRemoteRepositoryImplTest {
     }
 
     @Test
-    void updateOk() throws IOException {
+    void updateOk() {
         // Arrange
-        Call<UserApiEntity> getCall = (Call<UserApiEntity>) mock(Call.class);
-        Call<UserApiEntity> updateCall = (Call<UserApiEntity>) mock(Call.class);
-
         Response<UserApiEntity> getResponse = Response.success(userApiEntity);
         Response<UserApiEntity> updateResponse = Response.success(userApiEntity);
 
-        when(api.getById(1L)).thenReturn(getCall);
-        when(getCall.execute()).thenReturn(getResponse);
-        when(api.update(eq(1L), any(UserApiEntity.class))).thenReturn(updateCall);
-        when(updateCall.execute()).thenReturn(updateResponse);
+        when(api.getById(1L)).thenReturn(Single.just(getResponse));
+        when(api.update(eq(1L), any(UserApiEntity.class))).thenReturn(Single.just(updateResponse));
 
         // Act
         var testObserver = repository.update(user, 1L).test();
@@ -216,13 +547,11 @@ class UserRemoteRepositoryImplTest {
     }
 
     @Test
-    void updateNotFound() throws IOException {
+    void updateNotFound() {
         // Arrange
-        Call<UserApiEntity> call = (Call<UserApiEntity>) mock(Call.class);
-        Response<UserApiEntity> response = Response.error(500, ResponseBody.create(MediaType.parse("users/99"), ""));
+        Response<UserApiEntity> response = Response.error(404, ResponseBody.create(MediaType.parse("users/99"), ""));
 
-        when(api.getById(99L)).thenReturn(call);
-        when(call.execute()).thenReturn(response);
+        when(api.getById(99L)).thenReturn(Single.just(response));
 
         // Act
         var testObserver = repository.update(user, ((99L))).test();
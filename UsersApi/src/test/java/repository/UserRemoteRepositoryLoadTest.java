@@ -0,0 +1,141 @@
+package repository;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
+import org.example.database.JdbiManager;
+import org.example.repository.UserRemoteRepositoryImpl;
+import org.example.repository.UserRepositoryImpl;
+import org.example.rest.RetrofitClient;
+import org.example.rest.UsersApiDao;
+import org.example.service.UserServiceImpl;
+import org.example.storage.UserStorageImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de carga del camino HTTP real contra el servidor local FakeUsersApiServer.
+ * No se ejecutan con "test", solo con "gradlew loadTest". El tamaño de cada prueba se puede cambiar con
+ * -Dload.requests, -Dload.concurrency, -Dload.users, -Dload.latency-ms y -Dload.error-rate.
+ * Cada escenario imprime el rendimiento (operaciones por segundo) y los percentiles de latencia.
+ */
+@Tag("load")
+class UserRemoteRepositoryLoadTest {
+    private static final int REQUESTS = Integer.getInteger("load.requests", 2000);
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 64);
+    private static final int USERS = Integer.getInteger("load.users", 5000);
+    private static final long LATENCY_MS = Long.getLong("load.latency-ms", 20);
+    private static final double ERROR_RATE = Double.parseDouble(System.getProperty("load.error-rate", "0.01"));
+
+    private FakeUsersApiServer server;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) server.close();
+    }
+
+    @Test
+    void getByIdUnderConcurrentLoad() throws IOException {
+        UserRemoteRepositoryImpl repository = remoteRepository(new FakeUsersApiServer(USERS, LATENCY_MS, 0.5, ERROR_RATE));
+
+        Result result = run("remote getById", REQUESTS, CONCURRENCY,
+                i -> repository.getById(ThreadLocalRandom.current().nextLong(1, USERS + 1)));
+
+        // Con reintentos, los 503 sueltos no deberian llegar al llamador
+        assertTrue(result.errors() < REQUESTS * 0.01, "Demasiados errores: " + result.errors());
+    }
+
+    @Test
+    void streamAllUnderConcurrentLoad() throws IOException {
+        UserRemoteRepositoryImpl repository = remoteRepository(new FakeUsersApiServer(USERS, LATENCY_MS, 0.5, 0));
+
+        int downloads = Math.max(1, REQUESTS / 100);
+        Result result = run("remote streamAll (" + USERS + " usuarios)", downloads, Math.min(CONCURRENCY, 8),
+                i -> repository.streamAll().count().doOnSuccess(count -> assertEquals(USERS, count)).toMaybe());
+
+        assertEquals(0, result.errors());
+        assertEquals(downloads, result.completed());
+    }
+
+    @Test
+    void serviceGetByIdsUnderConcurrentLoad() throws IOException {
+        UserRemoteRepositoryImpl remote = remoteRepository(new FakeUsersApiServer(USERS, LATENCY_MS, 0.5, ERROR_RATE));
+        UserServiceImpl service = new UserServiceImpl(new UserRepositoryImpl(JdbiManager.getInstance().getUsersDao()),
+                remote, new UserStorageImpl());
+
+        int batches = Math.max(1, REQUESTS / 20);
+        Result result = run("service getByIds (lotes de 20)", batches, Math.min(CONCURRENCY, 16), i -> {
+            List<Long> ids = new ArrayList<>();
+            for (int n = 0; n < 20; n++) ids.add(ThreadLocalRandom.current().nextLong(1, USERS + 1));
+            return service.getByIds(ids).toMaybe();
+        });
+
+        assertEquals(0, result.errors());
+    }
+
+    private UserRemoteRepositoryImpl remoteRepository(FakeUsersApiServer server) {
+        this.server = server;
+        return new UserRemoteRepositoryImpl(RetrofitClient.create(server.getBaseUrl()).create(UsersApiDao.class));
+    }
+
+    /**
+     * Resultado de un escenario: operaciones completadas, fallidas y latencias en nanosegundos.
+     */
+    private record Result(int completed, int errors, long[] latencies, long elapsedNanos) {
+        long percentileMillis(double percentile) {
+            if (latencies.length == 0) return 0;
+            int index = (int) Math.ceil(percentile * latencies.length) - 1;
+            return latencies[Math.max(0, index)] / 1_000_000;
+        }
+
+        double throughput() {
+            return (completed + errors) / (elapsedNanos / 1e9);
+        }
+    }
+
+    /**
+     * Lanza el numero de operaciones indicado con como mucho "concurrency" en vuelo a la vez, mide la latencia
+     * de cada una e imprime el resumen.
+     */
+    private Result run(String name, int operations, int concurrency, IntFunction<Maybe<?>> operation) {
+        long[] latencies = new long[operations];
+        AtomicInteger recorded = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+
+        long start = System.nanoTime();
+        Flowable.range(0, operations)
+                .flatMapMaybe(i -> Maybe.defer(() -> {
+                    long begin = System.nanoTime();
+                    return operation.apply(i)
+                            .doOnEvent((value, error) -> {
+                                latencies[recorded.getAndIncrement()] = System.nanoTime() - begin;
+                                if (error == null) completed.incrementAndGet();
+                                else errors.incrementAndGet();
+                            })
+                            .onErrorComplete();
+                }), false, concurrency)
+                .blockingSubscribe();
+        long elapsed = System.nanoTime() - start;
+
+        long[] sorted = Arrays.copyOf(latencies, recorded.get());
+        Arrays.sort(sorted);
+        Result result = new Result(completed.get(), errors.get(), sorted, elapsed);
+        System.out.printf("%-40s %6d ops  %4d errores  %8.1f ops/s  p50=%d ms  p95=%d ms  p99=%d ms  (peticiones al servidor: %d)%n",
+                name, operations, result.errors(), result.throughput(),
+                result.percentileMillis(0.50), result.percentileMillis(0.95), result.percentileMillis(0.99),
+                server.getRequests());
+        return result;
+    }
+}
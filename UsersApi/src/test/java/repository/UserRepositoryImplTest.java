@@ -0,0 +1,100 @@
+package repository;
+
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import org.example.dao.UserDao;
+import org.example.exceptions.UserException;
+import org.example.mapper.UserMapper;
+import org.example.models.User;
+import org.example.repository.UserRepositoryImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserRepositoryImplTest {
+    private UserDao dao;
+    private UserRepositoryImpl repository;
+
+    @BeforeEach
+    void setUp() {
+        dao = mock(UserDao.class);
+        repository = new UserRepositoryImpl(dao, Schedulers.trampoline());
+    }
+
+    private static User user(long id, String email) {
+        return new User(id, "Usuario " + id, "usuario" + id, email);
+    }
+
+    /**
+     * Huellas de la tabla local con los usuarios 1..count.
+     */
+    private static Map<Long, String> localHashes(int count) {
+        Map<Long, String> hashes = new HashMap<>();
+        for (long id = 1; id <= count; id++) {
+            hashes.put(id, UserMapper.toUserEntity(user(id, "usuario" + id + "@mail.com")).getContentHash());
+        }
+        return hashes;
+    }
+
+    @Test
+    void synchronizeRejectsEmptyListWithLocalUsers() {
+        when(dao.findContentHashes()).thenReturn(localHashes(3));
+
+        repository.synchronize(List.of()).test()
+                .assertError(UserException.InvalidException.class);
+
+        // No se borra nada de la tabla
+        verify(dao, never()).applyChanges(any(), any(), any(), anyInt());
+        verify(dao, never()).swapFromStaging();
+    }
+
+    @Test
+    void synchronizeRejectsTooManyDeletes() {
+        when(dao.findContentHashes()).thenReturn(localHashes(10));
+
+        // La API solo devuelve 2 de los 10 usuarios: habria que borrar 8, mas de la mitad
+        repository.synchronize(List.of(user(1, "usuario1@mail.com"), user(2, "usuario2@mail.com"))).test()
+                .assertError(UserException.InvalidException.class);
+
+        verify(dao, never()).applyChanges(any(), any(), any(), anyInt());
+        verify(dao, never()).swapFromStaging();
+    }
+
+    @Test
+    void synchronizeEmptyListWithEmptyTable() {
+        when(dao.findContentHashes()).thenReturn(Map.of());
+
+        repository.synchronize(List.of()).test()
+                .assertValue(result -> result.changed() == 0 && result.getStaleIds().isEmpty());
+
+        verify(dao, never()).applyChanges(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void synchronizeReturnsUpdatedAndDeletedIds() {
+        when(dao.findContentHashes()).thenReturn(localHashes(10));
+        List<User> remote = new ArrayList<>();
+        for (long id = 1; id <= 9; id++) remote.add(user(id, "usuario" + id + "@mail.com"));
+        // El 1 cambia de email y el 10 ya no existe en la API
+        remote.set(0, user(1, "nuevo@mail.com"));
+
+        repository.synchronize(remote).test()
+                .assertValue(result -> result.getUpdated() == 1 && result.getDeleted() == 1
+                        && result.getStaleIds().equals(Set.of(1L, 10L)));
+
+        verify(dao).applyChanges(eq(List.of()), anyList(), eq(List.of(10L)), anyInt());
+    }
+}
@@ -0,0 +1,93 @@
+package repository;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+import org.example.models.User;
+import org.example.repository.UserRepositoryImpl;
+import org.example.repository.UserWriteBehindQueue;
+import org.example.repository.WriteBehindMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserWriteBehindQueueTest {
+    private UserRepositoryImpl repository;
+    // El temporizador de la cola no avanza solo, los vaciados periodicos no se ejecutan
+    private final TestScheduler scheduler = new TestScheduler();
+
+    private final User good = new User(1L, "Pepe", "pepelocatis", "pepelocatis@mail.com");
+    private final User poison = new User(2L, "Ana", "anita", "anita@mail.com");
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(UserRepositoryImpl.class);
+        // Cualquier grupo de escrituras que incluya al usuario "poison" falla
+        when(repository.applyWrites(anyList(), anyList())).thenAnswer(invocation -> {
+            List<User> upserts = invocation.getArgument(0);
+            List<Long> deletes = invocation.getArgument(1);
+            if (upserts.contains(poison)) return Single.error(new RuntimeException("Restriccion violada"));
+            return Single.just(upserts.size() + deletes.size());
+        });
+    }
+
+    /**
+     * Cola con el temporizador en un TestScheduler que no avanza, los vaciados se lanzan a mano.
+     */
+    private UserWriteBehindQueue queue(int capacity, int maxAttempts) {
+        return new UserWriteBehindQueue(repository, capacity, 100, 1000, maxAttempts, scheduler);
+    }
+
+    @Test
+    void failingWriteIsDiscardedAfterMaxAttempts() {
+        UserWriteBehindQueue queue = queue(10, 2);
+        queue.save(good).test().assertComplete();
+        queue.save(poison).test().assertComplete();
+
+        // El lote falla, se aplica fila a fila y solo vuelve a la cola la escritura que falla
+        queue.flush();
+        assertEquals(1, queue.getMetrics().getQueueDepth());
+        assertEquals(1, queue.getMetrics().getFlushedWrites());
+        verify(repository).applyWrites(List.of(good), List.of());
+
+        // Al agotar los intentos se descarta y deja de bloquear la cola
+        queue.flush();
+        WriteBehindMetrics metrics = queue.getMetrics();
+        assertEquals(0, metrics.getQueueDepth());
+        assertEquals(1, metrics.getDeadLettered());
+        assertEquals(2, metrics.getFailedFlushes());
+
+        User other = new User(3L, "Luis", "luisito", "luisito@mail.com");
+        queue.save(other).test().assertComplete();
+        queue.flush();
+        assertEquals(1, queue.getMetrics().getFlushes());
+        assertEquals(2, queue.getMetrics().getFlushedWrites());
+    }
+
+    @Test
+    void fullQueueFlushesOnQueueSchedulerAndWritesWhenStillFull() {
+        UserWriteBehindQueue queue = queue(1, 3);
+        queue.save(poison).test().assertComplete();
+
+        // Con la cola llena el vaciado no se hace en el hilo que escribe, sino en el scheduler de la cola
+        var overflow = queue.save(good).test();
+        overflow.assertNotComplete();
+        verify(repository, never()).applyWrites(anyList(), anyList());
+
+        // El vaciado no libera sitio, asi que la escritura no se encola sino que se aplica ya
+        scheduler.triggerActions();
+        overflow.assertComplete();
+
+        WriteBehindMetrics metrics = queue.getMetrics();
+        assertEquals(1, metrics.getQueueDepth());
+        assertEquals(1, metrics.getSynchronousWrites());
+        verify(repository).applyWrites(List.of(good), List.of());
+    }
+}
@@ -1,14 +1,19 @@
 package service;
 
-import com.github.benmanes.caffeine.cache.Cache;
+import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.plugins.RxJavaPlugins;
 import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.subjects.MaybeSubject;
+import org.example.cache.UserCache;
+import org.example.config.Config;
 import org.example.exceptions.UserException;
+import org.example.models.SyncResult;
 import org.example.models.User;
 import org.example.repository.UserRemoteRepositoryImpl;
 import org.example.repository.UserRepositoryImpl;
+import org.example.repository.UserWriteBehindQueue;
 import org.example.service.UserServiceImpl;
 import org.example.storage.UserStorageImpl;
 import org.junit.jupiter.api.AfterEach;
@@ -19,7 +24,15 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.File;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -29,7 +42,6 @@ class UserServiceImplTest {
     private UserRepositoryImpl localRepository;
     private UserRemoteRepositoryImpl remoteRepository;
     private UserStorageImpl storage;
-    private Cache<Long, User> cache;
 
     private UserServiceImpl service;
     @BeforeEach
@@ -40,9 +52,9 @@ class UserServiceImplTest {
         localRepository = mock(UserRepositoryImpl.class);
         remoteRepository = mock(UserRemoteRepositoryImpl.class);
         storage = mock(UserStorageImpl.class);
-        cache = mock(Cache.class);
 
-        service = new UserServiceImpl(localRepository, remoteRepository, storage, cache);
+        // Cache real, cargada por el servicio con los repositorios simulados
+        service = new UserServiceImpl(localRepository, remoteRepository, storage, UserCache.provideLookupCache(), null);
     }
 
     @AfterEach
@@ -52,6 +64,25 @@ class UserServiceImplTest {
 
     private final User user = new User(1L, "Pepe", "pepelocatis", "pepelocatis@mail.com");
 
+    /**
+     * Deja el usuario en la cache cargandolo desde el repositorio local y olvida esas llamadas.
+     */
+    private void primeCache(User cached) {
+        when(localRepository.getById(cached.getId())).thenReturn(Maybe.just(cached));
+        when(remoteRepository.getById(cached.getId())).thenReturn(Maybe.empty());
+        service.getById(cached.getId()).test().assertValue(cached);
+        clearInvocations(localRepository, remoteRepository);
+    }
+
+    /**
+     * Comprueba que el usuario se sirve desde la cache sin tocar los repositorios.
+     */
+    private void assertServedFromCache(User expected) {
+        clearInvocations(localRepository, remoteRepository);
+        service.getById(expected.getId()).test().assertValue(expected);
+        verifyNoInteractions(localRepository, remoteRepository);
+    }
+
 
     @Test
     void getAllLocal() {
@@ -71,6 +102,7 @@ class UserServiceImplTest {
     void getAllLocalEmptyRemoteHasData() {
         when(localRepository.getAll()).thenReturn(Single.just(List.of()));
         when(remoteRepository.getAll()).thenReturn(Single.just(List.of(user)));
+        when(localRepository.saveAll(List.of(user))).thenReturn(Single.just(1));
 
         var test = service.getAll().test();
 
@@ -79,12 +111,49 @@ class UserServiceImplTest {
                 .assertValue(users -> users.size() == 1 && users.get(0).equals(user));
 
         verify(remoteRepository).getAll();
-        verify(localRepository).save(user);
+        verify(localRepository).saveAll(List.of(user));
+        verify(localRepository, never()).save(any());
+    }
+
+    @Test
+    void getPageLocal() {
+        when(localRepository.getPage(0L, 10)).thenReturn(Single.just(List.of(user)));
+
+        var test = service.getPage(0L, 10).test();
+
+        test.assertComplete()
+                .assertNoErrors()
+                .assertValue(users -> users.size() == 1 && users.get(0).equals(user));
+
+        verify(remoteRepository, never()).getPage(anyLong(), anyInt());
+    }
+
+    @Test
+    void getPageLocalEmptyRemoteHasData() {
+        when(localRepository.getPage(0L, 10)).thenReturn(Single.just(List.of()));
+        when(remoteRepository.getPage(0L, 10)).thenReturn(Single.just(List.of(user)));
+        when(localRepository.saveAll(List.of(user))).thenReturn(Single.just(1));
+
+        var test = service.getPage(0L, 10).test();
+
+        test.assertComplete()
+                .assertNoErrors()
+                .assertValue(users -> users.size() == 1 && users.get(0).equals(user));
+
+        verify(localRepository).saveAll(List.of(user));
+    }
+
+    @Test
+    void getPageInvalidLimit() {
+        var test = service.getPage(0L, 0).test();
+
+        test.assertError(UserException.InvalidException.class);
+        verifyNoInteractions(localRepository, remoteRepository);
     }
 
     @Test
     void getByIdFromCache() {
-        when(cache.getIfPresent(1L)).thenReturn(user);
+        primeCache(user);
 
         var test = service.getById(1L).test();
 
@@ -97,7 +166,6 @@ class UserServiceImplTest {
 
     @Test
     void getByIdFromLocal() {
-        when(cache.getIfPresent(1L)).thenReturn(null);
         when(localRepository.getById(1L)).thenReturn(Maybe.just(user));
         when(remoteRepository.getById(anyLong())).thenReturn(Maybe.empty()); // necesario para evitar NPE
 
@@ -107,18 +175,18 @@ class UserServiceImplTest {
                 .assertNoErrors()
                 .assertValue(u -> u.equals(user));
 
-        verify(cache).put(1L, user);
         verify(localRepository).getById(1L);
 
         verify(remoteRepository).getById(anyLong()); // o verifica número exacto de llamadas si quieres
+        assertServedFromCache(user);
     }
 
 
     @Test
     void getByIdFromRemoteWhenLocalEmpty() {
-        when(cache.getIfPresent(1L)).thenReturn(null);
         when(localRepository.getById(1L)).thenReturn(Maybe.empty());
         when(remoteRepository.getById(1L)).thenReturn(Maybe.just(user));
+        when(localRepository.save(user)).thenReturn(Maybe.just(user));
 
         var test = service.getById(1L).test();
 
@@ -126,13 +194,12 @@ class UserServiceImplTest {
                 .assertNoErrors()
                 .assertValue(u -> u.equals(user));
 
-        verify(cache).put(1L, user);
         verify(localRepository).save(user);
+        assertServedFromCache(user);
     }
 
     @Test
     void getByIdNotFoundAnywhere() {
-        when(cache.getIfPresent(1L)).thenReturn(null);
         when(localRepository.getById(1L)).thenReturn(Maybe.empty());
         when(remoteRepository.getById(1L)).thenReturn(Maybe.empty());
 
@@ -141,9 +208,121 @@ class UserServiceImplTest {
         test.assertError(UserException.class);
     }
 
+    @Test
+    void getByIdConcurrentMissesShareOneLookup() {
+        // La busqueda local no termina hasta que se emite en el subject, asi las dos peticiones coinciden en el tiempo
+        MaybeSubject<User> local = MaybeSubject.create();
+        when(localRepository.getById(1L)).thenReturn(local);
+        when(remoteRepository.getById(1L)).thenReturn(Maybe.empty());
+
+        var first = service.getById(1L).test();
+        var second = service.getById(1L).test();
+        local.onSuccess(user);
+
+        first.assertValue(u -> u.equals(user));
+        second.assertValue(u -> u.equals(user));
+        verify(localRepository, times(1)).getById(1L);
+        verify(remoteRepository, times(1)).getById(1L);
+
+        // Terminada la carga, el usuario queda en la cache y la siguiente peticion no vuelve a buscar
+        service.getById(1L).test().assertValue(u -> u.equals(user));
+        verify(localRepository, times(1)).getById(1L);
+    }
+
+    @Test
+    void getByIdCacheMetricsCountHitsAndMisses() {
+        when(localRepository.getById(1L)).thenReturn(Maybe.just(user));
+        when(remoteRepository.getById(1L)).thenReturn(Maybe.empty());
+
+        service.getById(1L).test().assertValue(u -> u.equals(user));
+        service.getById(1L).test().assertValue(u -> u.equals(user));
+
+        // La primera busqueda falla y carga el usuario, la segunda acierta
+        var metrics = service.getCacheMetrics();
+        assertEquals(2, metrics.getRequests());
+        assertEquals(1, metrics.getHits());
+        assertEquals(1, metrics.getMisses());
+        assertEquals(1, metrics.getLoads());
+        assertEquals(0.5, metrics.getHitRate());
+    }
+
+    @Test
+    void getByIdsFromCacheLocalAndRemote() {
+        User local = new User(2L, "Ana", "anita", "anita@mail.com");
+        User remote = new User(3L, "Luis", "luisito", "luisito@mail.com");
+        primeCache(user);
+        when(localRepository.getByIds(Set.of(2L, 3L))).thenReturn(Single.just(List.of(local)));
+        when(remoteRepository.getById(3L)).thenReturn(Maybe.just(remote));
+        when(localRepository.applyWrites(List.of(remote), List.of())).thenReturn(Single.just(1));
+
+        var test = service.getByIds(List.of(1L, 2L, 3L)).test();
+
+        test.assertComplete()
+                .assertNoErrors()
+                .assertValue(Map.of(1L, user, 2L, local, 3L, remote));
+
+        // Solo se pide a la API el que no estaba ni en la cache ni en local, y se guarda en local
+        verify(remoteRepository, times(1)).getById(anyLong());
+        verify(localRepository).applyWrites(List.of(remote), List.of());
+    }
+
+    @Test
+    void getByIdsAllCached() {
+        primeCache(user);
+
+        service.getByIds(List.of(1L, 1L)).test()
+                .assertValue(Map.of(1L, user));
+
+        verifyNoInteractions(localRepository, remoteRepository);
+    }
+
+    @Test
+    void getByUsernameFromLocalThenLookupCache() {
+        when(localRepository.getByUsername("pepelocatis")).thenReturn(Maybe.just(user));
+
+        service.getByUsername("pepelocatis").test()
+                .assertComplete()
+                .assertNoErrors()
+                .assertValue(u -> u.equals(user));
+
+        // La segunda busqueda se sirve desde la cache de busquedas sin tocar los repositorios
+        service.getByUsername("pepelocatis").test()
+                .assertValue(u -> u.equals(user));
+
+        verify(localRepository, times(1)).getByUsername("pepelocatis");
+        verifyNoInteractions(remoteRepository);
+        assertServedFromCache(user);
+    }
+
+    @Test
+    void getByEmailFromRemoteWhenLocalEmpty() {
+        when(localRepository.getByEmail("pepelocatis@mail.com")).thenReturn(Maybe.empty());
+        when(remoteRepository.getByEmail("pepelocatis@mail.com")).thenReturn(Maybe.just(user));
+        when(localRepository.save(user)).thenReturn(Maybe.just(user));
+
+        var test = service.getByEmail("pepelocatis@mail.com").test();
+
+        test.assertComplete()
+                .assertNoErrors()
+                .assertValue(u -> u.equals(user));
+
+        verify(localRepository).save(user);
+    }
+
+    @Test
+    void getByEmailNotFoundAnywhere() {
+        when(localRepository.getByEmail("nadie@mail.com")).thenReturn(Maybe.empty());
+        when(remoteRepository.getByEmail("nadie@mail.com")).thenReturn(Maybe.empty());
+
+        var test = service.getByEmail("nadie@mail.com").test();
+
+        test.assertError(UserException.class);
+    }
+
     @Test
     void saveOk() {
         when(remoteRepository.save(user)).thenReturn(Maybe.just(user));
+        when(localRepository.save(user)).thenReturn(Maybe.just(user));
 
         var test = service.save(user).test();
 
@@ -151,8 +330,39 @@ class UserServiceImplTest {
                 .assertNoErrors()
                 .assertValue(u -> u.equals(user));
 
-        verify(cache).put(1L, user);
         verify(localRepository).save(user);
+        assertServedFromCache(user);
+    }
+
+    @Test
+    void saveOkWhenLocalWriteFails() {
+        when(remoteRepository.save(user)).thenReturn(Maybe.just(user));
+        when(localRepository.save(user)).thenReturn(Maybe.error(new RuntimeException("BD caida")));
+
+        var test = service.save(user).test();
+
+        // Un fallo al guardar en local no hace fallar la operacion en la API
+        test.assertComplete()
+                .assertNoErrors()
+                .assertValue(u -> u.equals(user));
+    }
+
+    @Test
+    void saveWithWriteBehindQueue() {
+        UserWriteBehindQueue queue = mock(UserWriteBehindQueue.class);
+        var writeBehindService = new UserServiceImpl(localRepository, remoteRepository, storage, UserCache.provideLookupCache(), queue);
+        when(remoteRepository.save(user)).thenReturn(Maybe.just(user));
+        when(queue.save(user)).thenReturn(Completable.complete());
+
+        var test = writeBehindService.save(user).test();
+
+        test.assertComplete()
+                .assertNoErrors()
+                .assertValue(u -> u.equals(user));
+
+        // La escritura local se encola y no se hace en el camino de la respuesta
+        verify(queue).save(user);
+        verify(localRepository, never()).save(any());
     }
 
     @Test
@@ -168,6 +378,7 @@ class UserServiceImplTest {
     @Test
     void updateOk() {
         when(remoteRepository.update(eq(user), eq(1L))).thenReturn(Maybe.just(user));
+        when(localRepository.update(user, 1L)).thenReturn(Maybe.just(user));
 
         var test = service.update(user, 1L).test();
 
@@ -175,8 +386,8 @@ class UserServiceImplTest {
                 .assertNoErrors()
                 .assertValue(u -> u.equals(user));
 
-        verify(cache).put(1L, user);
         verify(localRepository).update(user, 1L);
+        assertServedFromCache(user);
     }
 
     @Test
@@ -191,7 +402,9 @@ class UserServiceImplTest {
 
     @Test
     void deleteOk() {
+        primeCache(user);
         when(remoteRepository.delete(1L)).thenReturn(Maybe.just(user));
+        when(localRepository.delete(1L)).thenReturn(Maybe.just(user));
 
         var test = service.delete(1L).test();
 
@@ -200,7 +413,10 @@ class UserServiceImplTest {
                 .assertValue(u -> u.equals(user));
 
         verify(localRepository).delete(1L);
-        verify(cache).invalidate(1L);
+        // Ya no esta en la cache, la siguiente busqueda vuelve a los repositorios
+        when(localRepository.getById(1L)).thenReturn(Maybe.empty());
+        service.getById(1L).test().assertError(UserException.class);
+        verify(localRepository).getById(1L);
     }
 
     @Test
@@ -238,7 +454,8 @@ class UserServiceImplTest {
 
     @Test
     void refreshLocalRepositoryOk() {
-        when(remoteRepository.getAll()).thenReturn(Single.just(List.of(user)));
+        when(remoteRepository.getAllIfModified()).thenReturn(Maybe.just(List.of(user)));
+        when(localRepository.synchronize(List.of(user))).thenReturn(Single.just(new SyncResult(1, 0, 0, 0, false)));
 
         var test = service.refreshLocalRepository().test();
 
@@ -246,13 +463,27 @@ class UserServiceImplTest {
                 .assertNoErrors()
                 .assertValue(true);
 
-        verify(localRepository).deleteAll();
-        verify(localRepository).save(user);
+        // Ya no se vacia la tabla, solo se aplican las diferencias
+        verify(localRepository, never()).deleteAll();
+        verify(localRepository).synchronize(List.of(user));
+    }
+
+    @Test
+    void synchronizeSkipsInvalidUsers() {
+        User invalid = new User(2L, "", "", "");
+        when(remoteRepository.getAllIfModified()).thenReturn(Maybe.just(List.of(user, invalid)));
+        when(localRepository.synchronize(List.of(user))).thenReturn(Single.just(new SyncResult(0, 0, 1, 0, false)));
+
+        var test = service.synchronize().test();
+
+        test.assertComplete()
+                .assertNoErrors()
+                .assertValue(result -> result.changed() == 0 && result.getUnchanged() == 1);
     }
 
     @Test
     void refreshLocalRepositoryError() {
-        when(remoteRepository.getAll()).thenReturn(Single.error(new RuntimeException("Error")));
+        when(remoteRepository.getAllIfModified()).thenReturn(Maybe.error(new RuntimeException("Error")));
 
         var test = service.refreshLocalRepository().test();
 
@@ -260,6 +491,94 @@ class UserServiceImplTest {
                 .assertNoErrors()
                 .assertValue(false);
 
-        verify(localRepository).deleteAll();
+        verify(localRepository, never()).synchronize(any());
+    }
+
+    @Test
+    void refreshLocalRepositoryNotModified() {
+        // La API responde 304: no hay nada que sincronizar
+        when(remoteRepository.getAllIfModified()).thenReturn(Maybe.empty());
+
+        var test = service.refreshLocalRepository().test();
+
+        test.assertComplete()
+                .assertNoErrors()
+                .assertValue(true);
+
+        verify(localRepository, never()).synchronize(any());
+    }
+
+    @Test
+    void refreshLocalRepositorySyncErrorResetsValidators() {
+        when(remoteRepository.getAllIfModified()).thenReturn(Maybe.just(List.of(user)));
+        when(localRepository.synchronize(List.of(user))).thenReturn(Single.error(new RuntimeException("Error BD")));
+
+        var test = service.refreshLocalRepository().test();
+
+        test.assertValue(false);
+
+        // La siguiente sincronizacion tiene que volver a descargar la lista aunque no haya cambiado
+        verify(remoteRepository).resetValidators();
+    }
+
+    @Test
+    void synchronizeInvalidatesUpdatedAndDeletedUsers() {
+        primeCache(user);
+        User changed = new User(1L, "Pepe", "pepelocatis", "pepe@mail.com");
+        when(remoteRepository.getAllIfModified()).thenReturn(Maybe.just(List.of(changed)));
+        when(localRepository.synchronize(List.of(changed)))
+                .thenReturn(Single.just(new SyncResult(0, 1, 0, 0, false, Set.of(1L))));
+
+        service.synchronize().test().assertComplete();
+
+        // La copia antigua ya no se sirve desde la cache, se vuelve a leer la BD
+        when(localRepository.getById(1L)).thenReturn(Maybe.just(changed));
+        service.getById(1L).test().assertValue(changed);
+        verify(localRepository).getById(1L);
+    }
+
+    @Test
+    void getByIdServesOldValueWhileRefreshing() {
+        // Reloj de la cache que solo avanza cuando lo adelanta la prueba
+        AtomicLong nanos = new AtomicLong();
+        service = new UserServiceImpl(localRepository, remoteRepository, storage, UserCache.provideLookupCache(), null, nanos::get);
+        User refreshed = new User(1L, "Pepe", "pepelocatis", "pepe@mail.com");
+        MaybeSubject<User> reload = MaybeSubject.create();
+        when(localRepository.getById(1L)).thenReturn(Maybe.just(user), reload);
+        when(remoteRepository.getById(1L)).thenReturn(Maybe.empty());
+        service.getById(1L).test().assertValue(user);
+
+        // Pasado el tiempo de refresco, pero antes de caducar
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(Config.getInstance().getCacheRefreshAfterWriteMs() + 1));
+
+        // Se sirve el valor anterior mientras se vuelve a cargar
+        service.getById(1L).test().assertValue(user);
+        verify(localRepository, times(2)).getById(1L);
+        assertTrue(reload.hasObservers());
+
+        // Al terminar la recarga se sirve el valor nuevo sin otra busqueda
+        reload.onSuccess(refreshed);
+        service.getById(1L).test().assertValue(refreshed);
+        verify(localRepository, times(2)).getById(1L);
+    }
+
+    @Test
+    void refreshOfDeletedUserRemovesEntry() {
+        AtomicLong nanos = new AtomicLong();
+        service = new UserServiceImpl(localRepository, remoteRepository, storage, UserCache.provideLookupCache(), null, nanos::get);
+        // La primera carga lo encuentra; despues ya no existe en ningun repositorio
+        when(localRepository.getById(1L)).thenReturn(Maybe.just(user), Maybe.empty());
+        when(remoteRepository.getById(1L)).thenReturn(Maybe.empty());
+        service.getById(1L).test().assertValue(user);
+
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(Config.getInstance().getCacheRefreshAfterWriteMs() + 1));
+
+        // Este acceso lanza la recarga, que termina vacia y quita la entrada
+        service.getById(1L).test().assertValue(user);
+        verify(localRepository, times(2)).getById(1L);
+
+        // Ya no se sirve el usuario borrado, se vuelve a buscar y no existe
+        service.getById(1L).test().assertError(UserException.class);
+        verify(localRepository, times(3)).getById(1L);
     }
 }